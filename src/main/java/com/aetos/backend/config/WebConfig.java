@@ -1,19 +1,25 @@
 package com.aetos.backend.config;
 
+import com.aetos.backend.storage.BlobStore;
+import com.aetos.backend.storage.LocalFileSystemBlobStore;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
-import java.nio.file.Paths;
-
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
+
+    private final BlobStore blobStore;
+
+    public WebConfig(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
     
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        String base = System.getenv("UPLOADS_DIR");
-        if (base == null || base.isBlank()) base = System.getenv("RESOURCES_DIR");
-        if (base == null || base.isBlank()) base = Paths.get(System.getProperty("user.home"), "aetos-uploads").toAbsolutePath().toString();
+        // Las fotos de perfil las sirve UploadsController (con caché); esto cubre el resto de /uploads
+        if (!(blobStore instanceof LocalFileSystemBlobStore local)) return;
+        String base = local.uploadsBase().toString();
         String normalized = base.endsWith("/") ? base : base + "/";
         registry.addResourceHandler("/uploads/**")
                 .addResourceLocations("file:" + normalized);
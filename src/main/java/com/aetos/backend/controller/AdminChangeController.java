@@ -3,6 +3,7 @@ package com.aetos.backend.controller;
 import com.aetos.backend.model.Role;
 import com.aetos.backend.model.User;
 import com.aetos.backend.repository.UserRepository;
+import com.aetos.backend.security.TokenVersionRegistry;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
@@ -15,10 +16,12 @@ public class AdminChangeController {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TokenVersionRegistry tokenVersionRegistry;
 
-    public AdminChangeController(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public AdminChangeController(UserRepository userRepository, PasswordEncoder passwordEncoder, TokenVersionRegistry tokenVersionRegistry) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenVersionRegistry = tokenVersionRegistry;
     }
 
     // Crear admin por defecto si no existe
@@ -86,7 +89,7 @@ public class AdminChangeController {
         admin.setEmail(newEmail);
         admin.setPassword(passwordEncoder.encode(newPass));
         admin.setEmailVerified(true);
-        userRepository.save(admin);
+        tokenVersionRegistry.bumpAndSave(admin);
         return ResponseEntity.ok(Map.of("message", "Credenciales del admin actualizadas", "email", newEmail));
     }
 
@@ -100,7 +103,7 @@ public class AdminChangeController {
         User oldAdmin = userRepository.findByEmail(oldAdminEmail).orElse(null);
         if (oldAdmin != null) {
             oldAdmin.setRol(Role.LIDER);
-            userRepository.save(oldAdmin);
+            tokenVersionRegistry.bumpAndSave(oldAdmin);
         } else {
             return ResponseEntity.badRequest().body(Map.of("error", "Usuario antiguo no encontrado: " + oldAdminEmail));
         }
@@ -109,7 +112,7 @@ public class AdminChangeController {
         User newAdmin = userRepository.findByEmail(newAdminEmail).orElse(null);
         if (newAdmin != null) {
             newAdmin.setRol(Role.ADMIN);
-            userRepository.save(newAdmin);
+            tokenVersionRegistry.bumpAndSave(newAdmin);
         } else {
             return ResponseEntity.badRequest().body(Map.of("error", "Usuario nuevo no encontrado: " + newAdminEmail));
         }
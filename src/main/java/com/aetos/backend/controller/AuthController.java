@@ -129,7 +129,7 @@ public class AuthController {
             return ResponseEntity.status(401).body(Map.of("error", "Credenciales inválidas"));
         }
         
-        String token = jwtUtil.generateToken(user.getEmail());
+        String token = jwtUtil.generateToken(user);
         return ResponseEntity.ok(Map.of("token", token, "role", user.getRol(), "usuario", user.getUsuario()));
     }
 
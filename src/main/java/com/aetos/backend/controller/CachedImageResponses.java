@@ -0,0 +1,41 @@
+package com.aetos.backend.controller;
+
+import com.aetos.backend.service.ImageCache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Respuestas para imágenes servidas desde ImageCache. Los nombres son únicos
+ * por contenido, así que se marcan inmutables por un año y el ETag es fuerte.
+ */
+final class CachedImageResponses {
+
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    private CachedImageResponses() {}
+
+    static ResponseEntity<byte[]> of(ImageCache.Entry entry, String ifNoneMatch, MediaType mediaType) {
+        if (ifNoneMatch != null && matches(ifNoneMatch, entry.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(entry.etag())
+                    .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .contentLength(entry.data().length)
+                .eTag(entry.etag())
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                .body(entry.data());
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) return true;
+        }
+        return false;
+    }
+}
@@ -1,7 +1,12 @@
 package com.aetos.backend.controller;
 
+import com.aetos.backend.event.AttendanceRecordedEvent;
 import com.aetos.backend.model.*;
 import com.aetos.backend.repository.*;
+import com.aetos.backend.service.AttendanceLeaderboard;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.CacheControl;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -19,18 +24,24 @@ public class ExtendedFeaturesController {
     private final UserRepository userRepository;
     private final AttendanceRepository attendanceRepository;
     private final MeetingRepository meetingRepository;
+    private final AttendanceLeaderboard leaderboard;
+    private final ApplicationEventPublisher eventPublisher;
 
     public ExtendedFeaturesController(
             NotificationRepository notificationRepository,
             AbsenceJustificationRepository justificationRepository,
             UserRepository userRepository,
             AttendanceRepository attendanceRepository,
-            MeetingRepository meetingRepository) {
+            MeetingRepository meetingRepository,
+            AttendanceLeaderboard leaderboard,
+            ApplicationEventPublisher eventPublisher) {
         this.notificationRepository = notificationRepository;
         this.justificationRepository = justificationRepository;
         this.userRepository = userRepository;
         this.attendanceRepository = attendanceRepository;
         this.meetingRepository = meetingRepository;
+        this.leaderboard = leaderboard;
+        this.eventPublisher = eventPublisher;
     }
 
     // ============== NOTIFICACIONES ==============
@@ -220,8 +231,7 @@ public class ExtendedFeaturesController {
         }
 
         // Check if already marked
-        boolean alreadyMarked = attendanceRepository.findAll().stream()
-                .anyMatch(a -> a.getMeeting().getId().equals(meetingId) && a.getUser().getId().equals(userId));
+        boolean alreadyMarked = attendanceRepository.existsByMeeting_IdAndUser_Id(meetingId, userId);
 
         if (alreadyMarked) {
             return ResponseEntity.badRequest().body(Map.of("error", "Attendance already marked for this user"));
@@ -236,7 +246,15 @@ public class ExtendedFeaturesController {
                 .justification(justification)
                 .build();
 
-        attendanceRepository.save(attendance);
+        try {
+            attendanceRepository.save(attendance);
+        } catch (DataIntegrityViolationException e) {
+            // El usuario escaneó el QR mientras se marcaba a mano (índice único meeting_id, user_id)
+            return ResponseEntity.badRequest().body(Map.of("error", "Attendance already marked for this user"));
+        }
+        eventPublisher.publishEvent(new AttendanceRecordedEvent(
+                meeting.getId(), user.getId(), user.getNombre() + " " + user.getApellidos(),
+                user.getRol(), attendance.getTimestamp(), true));
         
         Map<String, Object> response = new HashMap<>();
         response.put("message", "Attendance marked manually");
@@ -248,32 +266,13 @@ public class ExtendedFeaturesController {
 
     // ============== RANKING DE ASISTENCIA ==============
 
+    // Servido desde el snapshot en memoria; If-None-Match con el mismo ETag responde 304
     @GetMapping("/ranking")
     public ResponseEntity<?> getAttendanceRanking() {
-        List<User> allUsers = userRepository.findAll().stream()
-                .filter(u -> u.getRol() == Role.MIEMBRO)
-                .collect(Collectors.toList());
-
-        List<Meeting> allMeetings = meetingRepository.findAll();
-        int totalMeetings = allMeetings.size();
-
-        List<Map<String, Object>> ranking = allUsers.stream().map(user -> {
-            long attendedCount = attendanceRepository.findAll().stream()
-                    .filter(a -> a.getUser().getId().equals(user.getId()))
-                    .count();
-
-            int percentage = totalMeetings > 0 ? (int) ((attendedCount * 100) / totalMeetings) : 0;
-
-            Map<String, Object> map = new HashMap<>();
-            map.put("userName", user.getNombre() + " " + user.getApellidos());
-            map.put("attended", attendedCount);
-            map.put("total", totalMeetings);
-            map.put("percentage", percentage);
-            return map;
-        })
-        .sorted((a, b) -> Integer.compare((int) b.get("percentage"), (int) a.get("percentage")))
-        .collect(Collectors.toList());
-
-        return ResponseEntity.ok(ranking);
+        AttendanceLeaderboard.Snapshot snapshot = leaderboard.snapshot();
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(snapshot.ranking());
     }
 }
@@ -1,5 +1,6 @@
 package com.aetos.backend.controller;
 
+import com.aetos.backend.event.AttendanceRecordedEvent;
 import com.aetos.backend.model.Attendance;
 import com.aetos.backend.model.Meeting;
 import com.aetos.backend.model.ProgramWeekly;
@@ -9,15 +10,30 @@ import com.aetos.backend.repository.AttendanceRepository;
 import com.aetos.backend.repository.MeetingRepository;
 import com.aetos.backend.repository.ProgramWeeklyRepository;
 import com.aetos.backend.repository.UserRepository;
+import com.aetos.backend.security.AuthenticatedUser;
+import com.aetos.backend.service.ActiveMeetingRegistry;
+import com.aetos.backend.service.ActiveMeetingWatcher;
+import com.aetos.backend.service.AttendanceExportService;
+import com.aetos.backend.service.AttendanceMatrix;
+import com.aetos.backend.service.AttendanceStreamHub;
+import com.aetos.backend.service.CheckInPipeline;
+import com.aetos.backend.util.KeysetCursor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Map;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 @RestController
@@ -28,12 +44,26 @@ public class MeetingController {
     private final UserRepository userRepository;
     private final AttendanceRepository attendanceRepository;
     private final ProgramWeeklyRepository programRepository;
-
-    public MeetingController(MeetingRepository meetingRepository, UserRepository userRepository, AttendanceRepository attendanceRepository, ProgramWeeklyRepository programRepository) {
+    private final ApplicationEventPublisher eventPublisher;
+    private final ActiveMeetingRegistry activeMeetingRegistry;
+    private final CheckInPipeline checkInPipeline;
+    private final AttendanceStreamHub attendanceStreamHub;
+    private final ActiveMeetingWatcher activeMeetingWatcher;
+    private final AttendanceMatrix attendanceMatrix;
+    private final AttendanceExportService attendanceExportService;
+
+    public MeetingController(MeetingRepository meetingRepository, UserRepository userRepository, AttendanceRepository attendanceRepository, ProgramWeeklyRepository programRepository, ApplicationEventPublisher eventPublisher, ActiveMeetingRegistry activeMeetingRegistry, CheckInPipeline checkInPipeline, AttendanceStreamHub attendanceStreamHub, ActiveMeetingWatcher activeMeetingWatcher, AttendanceMatrix attendanceMatrix, AttendanceExportService attendanceExportService) {
         this.meetingRepository = meetingRepository;
         this.userRepository = userRepository;
         this.attendanceRepository = attendanceRepository;
         this.programRepository = programRepository;
+        this.eventPublisher = eventPublisher;
+        this.activeMeetingRegistry = activeMeetingRegistry;
+        this.checkInPipeline = checkInPipeline;
+        this.attendanceStreamHub = attendanceStreamHub;
+        this.activeMeetingWatcher = activeMeetingWatcher;
+        this.attendanceMatrix = attendanceMatrix;
+        this.attendanceExportService = attendanceExportService;
     }
 
     // Only leader or admin should call this (secured by role in SecurityConfig)
@@ -55,30 +85,21 @@ public class MeetingController {
         LocalDateTime now = LocalDateTime.now();
         LocalDate today = now.toLocalDate();
 
-        // Deactivate any stale active meetings from previous days
-        var staleActives = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .filter(m -> !m.getFecha().toLocalDate().equals(today))
-                .toList();
-        staleActives.forEach(mm -> { mm.setActiva(false); meetingRepository.save(mm); });
+        // Deactivate any stale active meeting from previous days
+        activeMeetingRegistry.closeStale();
 
         // If there's an active meeting for today, reuse it and auto-register leader if needed
-        var existingMeeting = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .filter(m -> m.getFecha().toLocalDate().equals(today))
-                .sorted((a,b) -> b.getFecha().compareTo(a.getFecha()))
-                .findFirst();
+        var existingMeeting = activeMeetingRegistry.currentForToday();
         if (existingMeeting.isPresent()) {
             Meeting m = existingMeeting.get();
-            boolean leaderAlready = attendanceRepository.findAll().stream()
-                    .anyMatch(a -> a.getMeeting().getId().equals(m.getId()) && a.getUser().getId().equals(creator.getId()));
+            boolean leaderAlready = attendanceRepository.existsByMeeting_IdAndUser_Id(m.getId(), creator.getId());
             if (!leaderAlready) {
                 Attendance leaderAttendance = Attendance.builder()
                         .user(creator)
                         .meeting(m)
                         .timestamp(LocalDateTime.now())
                         .build();
-                attendanceRepository.save(leaderAttendance);
+                saveLeaderAttendance(leaderAttendance);
             }
             System.out.println("Returning existing active meeting. id=" + m.getId() + ", token=" + m.getTokenQr());
             return ResponseEntity.ok(m);
@@ -113,21 +134,18 @@ public class MeetingController {
             System.out.println("⚠️ Forzando activación de reunión por solicitud del líder " + email);
         }
 
-        // Create new meeting
-        Meeting m = Meeting.builder()
-                .fecha(LocalDateTime.now())
-                .tokenQr(UUID.randomUUID().toString())
-                .activa(true)
-                .build();
-        meetingRepository.save(m);
+        // Create new meeting (if another leader opened one at the same moment, that one is returned)
+        Meeting m = activeMeetingRegistry.open();
 
         // Auto-register leader attendance
-        Attendance leaderAttendance = Attendance.builder()
-                .user(creator)
-                .meeting(m)
-                .timestamp(LocalDateTime.now())
-                .build();
-        attendanceRepository.save(leaderAttendance);
+        if (!attendanceRepository.existsByMeeting_IdAndUser_Id(m.getId(), creator.getId())) {
+            Attendance leaderAttendance = Attendance.builder()
+                    .user(creator)
+                    .meeting(m)
+                    .timestamp(LocalDateTime.now())
+                    .build();
+            saveLeaderAttendance(leaderAttendance);
+        }
 
         System.out.println("✅ Líder registrado automáticamente: " + creator.getNombre());
         return ResponseEntity.ok(m);
@@ -142,18 +160,13 @@ public class MeetingController {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can regenerate QR"));
         }
 
-        var activeMeeting = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .findFirst();
+        var regenerated = activeMeetingRegistry.regenerateToken();
 
-        if (activeMeeting.isEmpty()) {
+        if (regenerated.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("error", "No active meeting"));
         }
 
-        Meeting meeting = activeMeeting.get();
-        meeting.setTokenQr(UUID.randomUUID().toString());
-        meetingRepository.save(meeting);
-        return ResponseEntity.ok(meeting);
+        return ResponseEntity.ok(regenerated.get());
     }
 
     // Get members who missed last 2 meetings (for "Te Extrañamos" alert)
@@ -165,26 +178,16 @@ public class MeetingController {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can view this"));
         }
 
-        // Get last 2 meetings
-        var recentMeetings = meetingRepository.findAll().stream()
-                .sorted((a, b) -> b.getFecha().compareTo(a.getFecha()))
-                .limit(2)
-                .toList();
-
-        if (recentMeetings.size() < 2) {
+        // Últimas 2 reuniones desde la matriz de asistencia
+        var matrix = attendanceMatrix.report(2);
+        if (matrix.recentMeetings().size() < 2) {
             return ResponseEntity.ok(java.util.List.of());
         }
 
-        // Get all users who attended these meetings
-        var attendedUserIds = attendanceRepository.findAll().stream()
-                .filter(a -> recentMeetings.stream().anyMatch(m -> m.getId().equals(a.getMeeting().getId())))
-                .map(a -> a.getUser().getId())
-                .collect(java.util.stream.Collectors.toSet());
-
         // Get users who didn't attend (exclude ADMIN users - they don't participate)
         var absentUsers = userRepository.findAll().stream()
                 .filter(u -> u.getRol() != Role.ADMIN) // Excluir administradores
-                .filter(u -> !attendedUserIds.contains(u.getId()))
+                .filter(u -> matrix.missedLast(u.getId(), 2))
                 .toList();
 
         return ResponseEntity.ok(absentUsers);
@@ -193,72 +196,51 @@ public class MeetingController {
     // Endpoint to mark attendance by scanning QR: body { tokenQr }
     @PostMapping("/attend")
     public ResponseEntity<?> attend(@RequestBody Map<String, String> body, Authentication auth) {
-        System.out.println("=== DEBUG ATTEND ENDPOINT ===");
         String tokenQr = body.get("tokenQr");
         tokenQr = tokenQr != null ? tokenQr.trim() : null;
-        System.out.println("Token QR received: '" + tokenQr + "'");
         
         if (tokenQr == null || tokenQr.isEmpty()) {
-            System.out.println("ERROR: tokenQr is null/empty");
             return ResponseEntity.badRequest().body(Map.of("error", "tokenQr required"));
         }
         
-        var opt = meetingRepository.findByTokenQrAndActivaTrue(tokenQr);
-        if (opt.isEmpty()) {
-            System.out.println("ERROR: No active meeting with token: " + tokenQr);
-            var activeTokens = meetingRepository.findAll().stream()
-                    .filter(Meeting::isActiva)
-                    .map(Meeting::getTokenQr)
-                    .toList();
-            System.out.println("Active meetings count: " + activeTokens.size());
-            System.out.println("Active tokens: " + activeTokens);
-            return ResponseEntity.badRequest().body(Map.of(
-                "error", "No active meeting with token",
-                "debugActiveTokens", activeTokens.toString()
-            ));
+        // Identidad desde el JWT; solo los tokens antiguos sin nombre requieren consultar la BD
+        Long userId;
+        String userName;
+        Role role;
+        if (auth.getDetails() instanceof AuthenticatedUser principal && principal.fullName() != null) {
+            userId = principal.id();
+            userName = principal.fullName();
+            role = Role.valueOf(auth.getAuthorities().iterator().next().getAuthority());
+        } else {
+            User user = userRepository.findByEmail((String) auth.getPrincipal()).orElse(null);
+            if (user == null) {
+                return ResponseEntity.status(401).body(Map.of("error", "User not found"));
+            }
+            userId = user.getId();
+            userName = user.getNombre() + " " + user.getApellidos();
+            role = user.getRol();
         }
         
-        Meeting meeting = opt.get();
-        System.out.println("Meeting found: " + meeting.getId() + ", active: " + meeting.isActiva());
-        
         LocalDateTime now = LocalDateTime.now();
-        System.out.println("Current time: " + now);
-
-        // Simplified validation: if meeting is active and token matches, accept attendance
-        System.out.println("SUCCESS: Meeting and token validated");
-        
-        String email = (String) auth.getPrincipal();
-        System.out.println("User email from auth: " + email);
-        
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
-            System.out.println("ERROR: User not found for email: " + email);
-            return ResponseEntity.status(401).body(Map.of("error", "User not found"));
-        }
-        
-        System.out.println("User found: " + user.getNombre() + " " + user.getApellidos() + " (ID: " + user.getId() + ")");
-        
-        // Check if user already marked attendance
-        boolean alreadyMarked = attendanceRepository.findAll().stream()
-                .anyMatch(a -> a.getMeeting().getId().equals(meeting.getId()) && a.getUser().getId().equals(user.getId()));
-        
-        System.out.println("Already marked attendance: " + alreadyMarked);
-        
-        if (alreadyMarked) {
-            System.out.println("ERROR: Usuario ya marcó asistencia");
-            return ResponseEntity.status(400).body(Map.of("error", "Ya has marcado tu asistencia"));
+        switch (checkInPipeline.submit(tokenQr, userId, userName, role)) {
+            case INVALID_TOKEN:
+                System.out.println("ERROR: No active meeting with token: " + tokenQr);
+                return ResponseEntity.badRequest().body(Map.of("error", "No active meeting with token"));
+            case DUPLICATE:
+                return ResponseEntity.status(400).body(Map.of("error", "Ya has marcado tu asistencia"));
+            case OVERLOADED:
+                System.out.println("⚠️ Cola de asistencias llena, se pide reintentar");
+                return ResponseEntity.status(503)
+                        .header("Retry-After", "2")
+                        .body(Map.of("error", "Demasiadas solicitudes, intenta de nuevo en unos segundos"));
+            default:
+                // Aceptada y encolada: se escribe en el próximo lote
+                return ResponseEntity.accepted().body(Map.of(
+                    "message", "attendance recorded",
+                    "userName", userName,
+                    "timestamp", now.toString()
+                ));
         }
-        
-        System.out.println("Creating attendance record...");
-        Attendance a = Attendance.builder().meeting(meeting).user(user).timestamp(now).build();
-        attendanceRepository.save(a);
-        
-        System.out.println("SUCCESS: Attendance recorded for " + user.getNombre() + " " + user.getApellidos());
-        return ResponseEntity.ok(Map.of(
-            "message", "attendance recorded",
-            "userName", user.getNombre() + " " + user.getApellidos(),
-            "timestamp", a.getTimestamp().toString()
-        ));
     }
 
     // Get active meeting (for displaying QR)
@@ -270,16 +252,9 @@ public class MeetingController {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can view this"));
         }
 
-        var actives = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .sorted((a,b) -> b.getFecha().compareTo(a.getFecha()))
-                .toList();
-        if (actives.isEmpty()) {
-            return ResponseEntity.ok(Map.of());
-        }
-        Meeting latest = actives.get(0);
-        actives.stream().skip(1).forEach(m -> { m.setActiva(false); meetingRepository.save(m); });
-        return ResponseEntity.ok(latest);
+        return activeMeetingRegistry.current()
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.ok(Map.of()));
     }
 
     // Get attendance count for a meeting
@@ -291,9 +266,7 @@ public class MeetingController {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can view this"));
         }
 
-        long count = attendanceRepository.findAll().stream()
-                .filter(a -> a.getMeeting().getId().equals(meetingId))
-                .count();
+        long count = attendanceRepository.countByMeeting_Id(meetingId);
 
         return ResponseEntity.ok(count);
     }
@@ -322,16 +295,12 @@ public class MeetingController {
         
         System.out.println("SUCCESS: User has permission (LIDER or ADMIN)");
 
-        var actives = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .sorted((a,b) -> b.getFecha().compareTo(a.getFecha()))
-                .toList();
-        if (actives.isEmpty()) {
+        var active = activeMeetingRegistry.current();
+        if (active.isEmpty()) {
             System.out.println("No active meeting found");
             return ResponseEntity.ok(Map.of("attendances", java.util.List.of()));
         }
-        Meeting meeting = actives.get(0);
-        actives.stream().skip(1).forEach(m -> { m.setActiva(false); meetingRepository.save(m); });
+        Meeting meeting = active.get();
         System.out.println("Active meeting found: " + meeting.getId());
         
         // Check if meeting is expired based on program schedule
@@ -357,8 +326,7 @@ public class MeetingController {
                 .orElse(null);
         
         // Get attendances regardless of expiration status
-        var attendances = attendanceRepository.findAll().stream()
-                .filter(a -> a.getMeeting() != null && a.getMeeting().getId() != null && a.getMeeting().getId().equals(meeting.getId()))
+        var attendances = attendanceRepository.findByMeeting_IdOrderByTimestampAsc(meeting.getId()).stream()
                 .map(a -> {
                     User user = a.getUser();
                     return Map.of(
@@ -395,6 +363,13 @@ public class MeetingController {
         ));
     }
 
+    // Stream SSE de asistencias de la reunión activa: snapshot inicial + un evento por asistencia
+    // (el acceso LIDER/ADMIN lo restringe SecurityConfig en /api/leader/**)
+    @GetMapping(value = "/leader/meetings/active/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamActiveMeetingAttendances() {
+        return attendanceStreamHub.subscribe();
+    }
+
     // Get all users with attendance status for active meeting
     @GetMapping("/leader/meetings/active/users-status")
     public ResponseEntity<?> getUsersAttendanceStatus(Authentication auth) {
@@ -404,15 +379,11 @@ public class MeetingController {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can view this"));
         }
 
-        var actives = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .sorted((a,b) -> b.getFecha().compareTo(a.getFecha()))
-                .toList();
-        if (actives.isEmpty()) {
+        var active = activeMeetingRegistry.current();
+        if (active.isEmpty()) {
             return ResponseEntity.ok(Map.of("users", java.util.List.of(), "meeting", null));
         }
-        Meeting meeting = actives.get(0);
-        actives.stream().skip(1).forEach(m -> { m.setActiva(false); meetingRepository.save(m); });
+        Meeting meeting = active.get();
         
         // Check expiration using the last end time of today's programs
         LocalDate today = LocalDate.now();
@@ -429,8 +400,7 @@ public class MeetingController {
         }
 
         // Get all attendances for this meeting
-        var attendanceMap = attendanceRepository.findAll().stream()
-                .filter(a -> a.getMeeting().getId().equals(meeting.getId()))
+        var attendanceMap = attendanceRepository.findByMeeting_IdOrderByTimestampAsc(meeting.getId()).stream()
                 .collect(Collectors.toMap(
                     a -> a.getUser().getId(),
                     a -> a.getTimestamp().toString()
@@ -479,8 +449,7 @@ public class MeetingController {
             return ResponseEntity.status(404).body(Map.of("error", "Meeting not found"));
         }
 
-        var attendances = attendanceRepository.findAll().stream()
-                .filter(a -> a.getMeeting().getId().equals(meetingId))
+        var attendances = attendanceRepository.findByMeeting_IdOrderByTimestampAsc(meetingId).stream()
                 .map(a -> Map.of(
                     "id", a.getId(),
                     "userId", a.getUser().getId(),
@@ -502,20 +471,49 @@ public class MeetingController {
     }
 
     // Get all meetings history
+    // Con limit o cursor responde paginado por keyset; sin ellos mantiene la respuesta completa
     @GetMapping("/leader/meetings/history")
-    public ResponseEntity<?> getAllMeetingsHistory(Authentication auth) {
+    public ResponseEntity<?> getAllMeetingsHistory(@RequestParam(required = false) Integer limit,
+                                                   @RequestParam(required = false) String cursor,
+                                                   Authentication auth) {
         String email = (String) auth.getPrincipal();
         User creator = userRepository.findByEmail(email).orElse(null);
         if (creator == null || (creator.getRol() != Role.LIDER && creator.getRol() != Role.ADMIN)) {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can view this"));
         }
 
-        var meetings = meetingRepository.findAll().stream()
-                .sorted((m1, m2) -> m2.getFecha().compareTo(m1.getFecha())) // Most recent first
+        if (limit != null || cursor != null) {
+            KeysetCursor after;
+            try {
+                after = KeysetCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            int size = KeysetCursor.clampLimit(limit);
+            var page = meetingPage(after, size);
+            boolean hasMore = page.size() > size;
+            if (hasMore) page = page.subList(0, size);
+
+            // Conteos de la página en una sola consulta agrupada
+            var pageIds = page.stream().map(Meeting::getId).toList();
+            Map<Long, Long> pageCounts = pageIds.isEmpty() ? Map.of() : toCountMap(attendanceRepository.countGroupedByMeeting(pageIds));
+            var items = page.stream()
+                    .map(meeting -> Map.of(
+                        "id", meeting.getId(),
+                        "fecha", meeting.getFecha().toString(),
+                        "activa", meeting.isActiva(),
+                        "attendanceCount", pageCounts.getOrDefault(meeting.getId(), 0L)
+                    ))
+                    .toList();
+            return ResponseEntity.ok(pageResponse(items, page, hasMore));
+        }
+
+        // Conteos agrupados en una sola consulta en lugar de recorrer asistencias por reunión
+        Map<Long, Long> countsByMeeting = toCountMap(attendanceRepository.countGroupedByMeeting());
+
+        var meetings = meetingRepository.findAllByOrderByFechaDesc().stream() // Most recent first
                 .map(meeting -> {
-                    long attendanceCount = attendanceRepository.findAll().stream()
-                            .filter(a -> a.getMeeting().getId().equals(meeting.getId()))
-                            .count();
+                    long attendanceCount = countsByMeeting.getOrDefault(meeting.getId(), 0L);
                     
                     return Map.of(
                         "id", meeting.getId(),
@@ -529,25 +527,86 @@ public class MeetingController {
         return ResponseEntity.ok(Map.of("meetings", meetings));
     }
 
+    // Exportación del historial de reuniones (detail=true: una fila por asistencia)
+    @GetMapping("/leader/meetings/history/export")
+    public ResponseEntity<StreamingResponseBody> exportMeetingsHistory(@RequestParam(defaultValue = "csv") String format,
+                                                                       @RequestParam(defaultValue = "false") boolean detail) {
+        var fmt = AttendanceExportService.parseFormat(format);
+        return exportResponse(fmt, "historial-reuniones", out -> attendanceExportService.writeMeetingHistory(fmt, detail, out));
+    }
+
     // Get user's personal attendance history
+    // Con limit o cursor responde paginado por keyset; sin ellos mantiene la respuesta completa
     @GetMapping("/user/my-attendances")
-    public ResponseEntity<?> getMyAttendances(Authentication auth) {
+    public ResponseEntity<?> getMyAttendances(@RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) String cursor,
+                                              Authentication auth) {
+        if (limit != null || cursor != null) {
+            Long userId = resolveUserId(auth);
+            if (userId == null) {
+                return ResponseEntity.status(401).body(Map.of("error", "User not found"));
+            }
+            KeysetCursor after;
+            try {
+                after = KeysetCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+            }
+            int size = KeysetCursor.clampLimit(limit);
+            var page = meetingPage(after, size);
+            boolean hasMore = page.size() > size;
+            if (hasMore) page = page.subList(0, size);
+
+            // Marcas de asistencia del usuario solo para las reuniones de la página
+            var pageIds = page.stream().map(Meeting::getId).toList();
+            Map<Long, LocalDateTime> attendedAt = new java.util.HashMap<>();
+            if (!pageIds.isEmpty()) {
+                for (Object[] row : attendanceRepository.findUserAttendanceTimes(userId, pageIds)) {
+                    attendedAt.put((Long) row[0], (LocalDateTime) row[1]);
+                }
+            }
+            var items = page.stream()
+                    .map(meeting -> {
+                        LocalDateTime timestamp = attendedAt.get(meeting.getId());
+                        return Map.of(
+                            "id", meeting.getId(),
+                            "fecha", meeting.getFecha().toString(),
+                            "activa", meeting.isActiva(),
+                            "attended", attendedAt.containsKey(meeting.getId()),
+                            "timestamp", timestamp != null ? timestamp.toString() : ""
+                        );
+                    })
+                    .toList();
+
+            Map<String, Object> response = pageResponse(items, page, hasMore);
+            // Totales solo en la primera página: dos conteos indexados
+            if (after == null) {
+                long totalMeetings = meetingRepository.count();
+                long attendedCount = attendanceRepository.countByUser_Id(userId);
+                response.put("stats", Map.of(
+                    "total", totalMeetings,
+                    "attended", attendedCount,
+                    "missed", totalMeetings - attendedCount
+                ));
+            }
+            return ResponseEntity.ok(response);
+        }
+
         String email = (String) auth.getPrincipal();
         User user = userRepository.findByEmail(email).orElse(null);
         if (user == null) {
             return ResponseEntity.status(401).body(Map.of("error", "User not found"));
         }
 
+        // Asistencias del usuario indexadas por reunión (una sola consulta)
+        Map<Long, Attendance> attendanceByMeeting = attendanceRepository.findByUser_Id(user.getId()).stream()
+                .collect(Collectors.toMap(a -> a.getMeeting().getId(), a -> a, (a, b) -> a));
+
         // Get all meetings
-        var allMeetings = meetingRepository.findAll().stream()
-                .sorted((m1, m2) -> m2.getFecha().compareTo(m1.getFecha())) // Most recent first
+        var allMeetings = meetingRepository.findAllByOrderByFechaDesc().stream() // Most recent first
                 .map(meeting -> {
                     // Check if user attended this meeting
-                    var attendance = attendanceRepository.findAll().stream()
-                            .filter(a -> a.getMeeting().getId().equals(meeting.getId()) && 
-                                        a.getUser().getId().equals(user.getId()))
-                            .findFirst()
-                            .orElse(null);
+                    var attendance = attendanceByMeeting.get(meeting.getId());
                     
                     boolean attended = attendance != null;
                     
@@ -578,43 +637,23 @@ public class MeetingController {
     // Check if there's an active meeting and if user has attended
     @GetMapping("/user/active-meeting-status")
     public ResponseEntity<?> getActiveMeetingStatus(Authentication auth) {
-        String email = (String) auth.getPrincipal();
-        User user = userRepository.findByEmail(email).orElse(null);
-        if (user == null) {
+        Long userId = resolveUserId(auth);
+        if (userId == null) {
             return ResponseEntity.status(401).body(Map.of("error", "User not found"));
         }
+        return ResponseEntity.ok(activeMeetingWatcher.statusFor(userId));
+    }
 
-        var actives = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .sorted((a,b) -> b.getFecha().compareTo(a.getFecha()))
-                .toList();
-        if (actives.isEmpty()) {
-            return ResponseEntity.ok(Map.of("hasActiveMeeting", false));
-        }
-        Meeting meeting = actives.get(0);
-        actives.stream().skip(1).forEach(m -> { m.setActiva(false); meetingRepository.save(m); });
-        
-        // Expiration by TTL (meeting creation time + 120 minutes)
-        LocalDateTime ttl = meeting.getFecha().plusMinutes(120);
-        if (LocalDateTime.now().isAfter(ttl)) {
-            return ResponseEntity.ok(Map.of("hasActiveMeeting", false, "expired", true));
+    // Long-poll: responde al cambiar la reunión activa respecto a "since" o al vencer el timeout
+    @GetMapping("/user/active-meeting-status/wait")
+    public DeferredResult<ResponseEntity<?>> waitActiveMeetingStatus(@RequestParam(required = false) Long since, Authentication auth) {
+        Long userId = resolveUserId(auth);
+        if (userId == null) {
+            DeferredResult<ResponseEntity<?>> unauthorized = new DeferredResult<>();
+            unauthorized.setResult(ResponseEntity.status(401).body(Map.of("error", "User not found")));
+            return unauthorized;
         }
-
-        // Check if user already attended
-        boolean hasAttended = attendanceRepository.findAll().stream()
-                .anyMatch(a -> a.getMeeting().getId().equals(meeting.getId()) && 
-                              a.getUser().getId().equals(user.getId()));
-
-        String expiresAt = meeting.getFecha().plusMinutes(120).toString();
-
-        return ResponseEntity.ok(Map.of(
-            "hasActiveMeeting", true,
-            "hasAttended", hasAttended,
-            "meetingId", meeting.getId(),
-            "meetingDate", meeting.getFecha().toString(),
-            "expiresAt", expiresAt,
-            "tokenQr", meeting.getTokenQr()
-        ));
+        return activeMeetingWatcher.await(userId, since);
     }
 
     // Get comprehensive attendance report for all users
@@ -626,53 +665,29 @@ public class MeetingController {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can view this"));
         }
 
-        // Get all meetings sorted by date (most recent first)
-        var allMeetings = meetingRepository.findAll().stream()
-                .sorted((m1, m2) -> m2.getFecha().compareTo(m1.getFecha()))
-                .toList();
-
-        // Get last 2 meetings for consecutive absence detection
-        var lastTwoMeetings = allMeetings.stream().limit(2).toList();
-
-        // Get all attendances
-        var allAttendances = attendanceRepository.findAll();
+        // Totales, historial de las últimas 10 reuniones y ausencias consecutivas desde la matriz
+        var matrix = attendanceMatrix.report(10);
+        long totalMeetings = matrix.totalMeetings();
+        var recentMeetings = matrix.recentMeetings();
 
         // Build report for each user
         var userReports = userRepository.findAll().stream()
                 .map(user -> {
                     // Count total attendances for this user
-                    long attendedCount = allAttendances.stream()
-                            .filter(a -> a.getUser().getId().equals(user.getId()))
-                            .count();
+                    long attendedCount = matrix.attended(user.getId());
                     
-                    long totalMeetings = allMeetings.size();
                     long missedCount = totalMeetings - attendedCount;
                     
                     // Check if user missed last 2 meetings consecutively
-                    boolean missedLastTwo = false;
-                    if (lastTwoMeetings.size() >= 2) {
-                        boolean missedFirst = allAttendances.stream()
-                                .noneMatch(a -> a.getUser().getId().equals(user.getId()) && 
-                                              a.getMeeting().getId().equals(lastTwoMeetings.get(0).getId()));
-                        boolean missedSecond = allAttendances.stream()
-                                .noneMatch(a -> a.getUser().getId().equals(user.getId()) && 
-                                              a.getMeeting().getId().equals(lastTwoMeetings.get(1).getId()));
-                        missedLastTwo = missedFirst && missedSecond;
-                    }
+                    boolean missedLastTwo = matrix.missedLast(user.getId(), 2);
                     
                     // Get attendance history (last 10 meetings)
-                    var recentHistory = allMeetings.stream()
-                            .limit(10)
-                            .map(meeting -> {
-                                boolean attended = allAttendances.stream()
-                                        .anyMatch(a -> a.getUser().getId().equals(user.getId()) && 
-                                                     a.getMeeting().getId().equals(meeting.getId()));
-                                return Map.of(
-                                    "meetingId", meeting.getId(),
-                                    "fecha", meeting.getFecha().toString(),
-                                    "attended", attended
-                                );
-                            })
+                    var recentHistory = java.util.stream.IntStream.range(0, recentMeetings.size())
+                            .mapToObj(i -> Map.of(
+                                "meetingId", recentMeetings.get(i).id(),
+                                "fecha", recentMeetings.get(i).fecha().toString(),
+                                "attended", matrix.attendedRecent(user.getId(), i)
+                            ))
                             .toList();
                     
                     // Use HashMap to avoid Map.of() size limitation
@@ -699,7 +714,80 @@ public class MeetingController {
         return ResponseEntity.ok(Map.of(
             "users", userReports,
             "totalUsers", userReports.size(),
-            "totalMeetings", allMeetings.size()
+            "totalMeetings", totalMeetings
         ));
     }
+
+    // Exportación del reporte de asistencia por usuario
+    @GetMapping("/leader/attendance-report/export")
+    public ResponseEntity<StreamingResponseBody> exportAttendanceReport(@RequestParam(defaultValue = "csv") String format) {
+        var fmt = AttendanceExportService.parseFormat(format);
+        return exportResponse(fmt, "reporte-asistencia", out -> attendanceExportService.writeAttendanceReport(fmt, out));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> exportResponse(AttendanceExportService.Format format, String baseName, StreamingResponseBody body) {
+        boolean xlsx = format == AttendanceExportService.Format.XLSX;
+        String filename = baseName + "-" + LocalDate.now() + (xlsx ? ".xlsx" : ".csv");
+        return ResponseEntity.ok()
+                .contentType(xlsx
+                        ? MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+                        : new MediaType("text", "csv", java.nio.charset.StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .body(body);
+    }
+
+    // Una reunión más que el tamaño pedido para saber si hay página siguiente
+    private java.util.List<Meeting> meetingPage(KeysetCursor after, int size) {
+        var pageable = PageRequest.of(0, size + 1);
+        return after == null
+                ? meetingRepository.findPage(pageable)
+                : meetingRepository.findPageBefore(after.fecha(), after.id(), pageable);
+    }
+
+    private static Map<String, Object> pageResponse(java.util.List<?> items, java.util.List<Meeting> page, boolean hasMore) {
+        Map<String, Object> response = new java.util.HashMap<>();
+        response.put("meetings", items);
+        response.put("hasMore", hasMore);
+        if (hasMore) {
+            Meeting last = page.get(page.size() - 1);
+            response.put("nextCursor", new KeysetCursor(last.getFecha(), last.getId()).encode());
+        } else {
+            response.put("nextCursor", null);
+        }
+        return response;
+    }
+
+    // Id del usuario autenticado desde el JWT; los tokens antiguos sin detalles se resuelven por email
+    private Long resolveUserId(Authentication auth) {
+        if (auth.getDetails() instanceof AuthenticatedUser principal) {
+            return principal.id();
+        }
+        return userRepository.findByEmail((String) auth.getPrincipal()).map(User::getId).orElse(null);
+    }
+
+    // El líder pudo haber escaneado su propio QR a la vez; el índice único resuelve la carrera
+    private void saveLeaderAttendance(Attendance leaderAttendance) {
+        try {
+            attendanceRepository.save(leaderAttendance);
+            publishAttendance(leaderAttendance);
+        } catch (DataIntegrityViolationException e) {
+            System.out.println("ℹ️ El líder ya tenía asistencia registrada");
+        }
+    }
+
+    private void publishAttendance(Attendance a) {
+        User u = a.getUser();
+        eventPublisher.publishEvent(new AttendanceRecordedEvent(
+                a.getMeeting().getId(), u.getId(), u.getNombre() + " " + u.getApellidos(),
+                u.getRol(), a.getTimestamp(), Boolean.TRUE.equals(a.getMarkedManually())));
+    }
+
+    // Convierte filas [id, count] de consultas agrupadas en un mapa id -> count
+    private static Map<Long, Long> toCountMap(java.util.List<Object[]> rows) {
+        Map<Long, Long> counts = new java.util.HashMap<>();
+        for (Object[] row : rows) {
+            counts.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.aetos.backend.controller;
+
+import com.aetos.backend.service.EmailTemplates;
+import com.aetos.backend.service.ImageCache;
+import com.aetos.backend.service.OutboxDispatcher;
+import com.aetos.backend.service.SmtpConnectionPool;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Métricas internas para administradores (/api/admin/** requiere rol ADMIN)
+@RestController
+@RequestMapping("/api/admin/metrics")
+public class MetricsController {
+
+    private final ImageCache imageCache;
+    private final OutboxDispatcher outboxDispatcher;
+    private final SmtpConnectionPool smtpPool;
+    private final EmailTemplates emailTemplates;
+
+    public MetricsController(ImageCache imageCache, OutboxDispatcher outboxDispatcher, SmtpConnectionPool smtpPool,
+                             EmailTemplates emailTemplates) {
+        this.imageCache = imageCache;
+        this.outboxDispatcher = outboxDispatcher;
+        this.smtpPool = smtpPool;
+        this.emailTemplates = emailTemplates;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("imageCache", imageCache.stats());
+        metrics.put("outbox", outboxDispatcher.stats());
+        metrics.put("smtp", smtpPool.stats());
+        metrics.put("emailTemplates", emailTemplates.stats());
+        return ResponseEntity.ok(metrics);
+    }
+}
@@ -1,12 +1,11 @@
 package com.aetos.backend.controller;
 
 import com.aetos.backend.model.PrayerRequest;
-import com.aetos.backend.model.Meeting;
 import com.aetos.backend.model.Role;
 import com.aetos.backend.model.User;
 import com.aetos.backend.repository.PrayerRequestRepository;
-import com.aetos.backend.repository.MeetingRepository;
 import com.aetos.backend.repository.UserRepository;
+import com.aetos.backend.service.ActiveMeetingRegistry;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -20,23 +19,21 @@ import java.util.Map;
 public class PrayerController {
 
     private final PrayerRequestRepository prayerRequestRepository;
-    private final MeetingRepository meetingRepository;
+    private final ActiveMeetingRegistry activeMeetingRegistry;
     private final UserRepository userRepository;
 
     public PrayerController(PrayerRequestRepository prayerRequestRepository, 
-                           MeetingRepository meetingRepository,
+                           ActiveMeetingRegistry activeMeetingRegistry,
                            UserRepository userRepository) {
         this.prayerRequestRepository = prayerRequestRepository;
-        this.meetingRepository = meetingRepository;
+        this.activeMeetingRegistry = activeMeetingRegistry;
         this.userRepository = userRepository;
     }
 
     // Get prayer requests for active meeting (any authenticated user)
     @GetMapping("/prayers")
     public ResponseEntity<?> getPrayersForActiveMeeting() {
-        var activeMeeting = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .findFirst();
+        var activeMeeting = activeMeetingRegistry.current();
         
         if (activeMeeting.isEmpty()) {
             return ResponseEntity.ok(List.of());
@@ -55,9 +52,7 @@ public class PrayerController {
             return ResponseEntity.status(403).body(Map.of("error", "Only leader or admin can add prayers"));
         }
 
-        var activeMeeting = meetingRepository.findAll().stream()
-                .filter(Meeting::isActiva)
-                .findFirst();
+        var activeMeeting = activeMeetingRegistry.current();
         
         if (activeMeeting.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("error", "No active meeting"));
@@ -5,17 +5,15 @@ import com.aetos.backend.model.Role;
 import com.aetos.backend.model.User;
 import com.aetos.backend.repository.ProgramWeeklyRepository;
 import com.aetos.backend.repository.UserRepository;
+import com.aetos.backend.service.ContentAddressedStore;
+import com.aetos.backend.storage.BlobStore;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -24,7 +22,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.stream.Collectors;
 
 @RestController
@@ -34,11 +31,13 @@ public class ProfileController {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final ProgramWeeklyRepository programWeeklyRepository;
+    private final ContentAddressedStore contentStore;
 
-    public ProfileController(UserRepository userRepository, PasswordEncoder passwordEncoder, ProgramWeeklyRepository programWeeklyRepository) {
+    public ProfileController(UserRepository userRepository, PasswordEncoder passwordEncoder, ProgramWeeklyRepository programWeeklyRepository, ContentAddressedStore contentStore) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.programWeeklyRepository = programWeeklyRepository;
+        this.contentStore = contentStore;
     }
 
     @GetMapping
@@ -134,45 +133,30 @@ public class ProfileController {
         }
         
         try {
-            String base = System.getenv("UPLOADS_DIR");
-            if (base == null || base.isBlank()) base = System.getenv("RESOURCES_DIR");
-            if (base == null || base.isBlank()) base = Paths.get(System.getProperty("user.home"), "aetos-uploads").toString();
-            String uploadsDir = Paths.get(base, "profiles").toString();
-            File directory = new File(uploadsDir);
-            if (!directory.exists()) {
-                directory.mkdirs();
-                System.out.println("📁 Directorio de perfiles creado: " + uploadsDir);
-            }
-            
-            // Generar nombre único para el archivo
+            // Extensión del archivo original (en minúsculas, el nombre final es el hash del contenido)
             String originalFilename = file.getOriginalFilename();
             String extension = originalFilename != null && originalFilename.contains(".")
-                    ? originalFilename.substring(originalFilename.lastIndexOf("."))
-                    : ".jpg";
-            String filename = "profile_" + user.getId() + "_" + UUID.randomUUID() + extension;
+                    ? originalFilename.substring(originalFilename.lastIndexOf(".") + 1)
+                    : "jpg";
             
-            // Guardar archivo
-            Path filePath = Paths.get(uploadsDir, filename);
-            Files.write(filePath, file.getBytes());
+            // Guardar archivo por contenido: la misma imagen se guarda una sola vez
+            var staged = contentStore.stage(file.getInputStream(), BlobStore.PROFILES, extension, contentType);
+            String oldPhotoUrl = user.getPhotoUrl();
+            String photoUrl = contentStore.commit(staged, blob -> {
+                String url = "/api/uploads/profiles/" + blob.fileName();
+                user.setPhotoUrl(url);
+                userRepository.save(user);
+                System.out.println("📸 Foto guardada: " + blob.fileName()
+                        + (blob.reused() ? " (reutilizada)" : ""));
+                return url;
+            }, () -> userRepository.countByPhotoUrl("/api/uploads/profiles/" + staged.fileName()));
             
-            System.out.println("📸 Foto guardada en: " + filePath.toAbsolutePath());
-            
-            // Eliminar foto anterior si existe
-            if (user.getPhotoUrl() != null && !user.getPhotoUrl().isEmpty()) {
-                try {
-                    String oldFilename = user.getPhotoUrl().substring(user.getPhotoUrl().lastIndexOf("/") + 1);
-                    Path oldFilePath = Paths.get(uploadsDir, oldFilename);
-                    Files.deleteIfExists(oldFilePath);
-                } catch (Exception e) {
-                    System.err.println("Error al eliminar foto anterior: " + e.getMessage());
-                }
+            // Eliminar foto anterior si ningún usuario la sigue usando
+            if (oldPhotoUrl != null && !oldPhotoUrl.isEmpty() && !oldPhotoUrl.equals(photoUrl)) {
+                String oldFilename = oldPhotoUrl.substring(oldPhotoUrl.lastIndexOf("/") + 1);
+                contentStore.release(BlobStore.PROFILES, oldFilename, () -> userRepository.countByPhotoUrl(oldPhotoUrl));
             }
             
-            // Actualizar URL en el usuario
-            String photoUrl = "/api/uploads/profiles/" + filename;
-            user.setPhotoUrl(photoUrl);
-            userRepository.save(user);
-            
             return ResponseEntity.ok(Map.of(
                 "message", "Foto de perfil actualizada exitosamente",
                 "photoUrl", photoUrl
@@ -7,6 +7,7 @@ import com.aetos.backend.model.User;
 import com.aetos.backend.repository.LocationRepository;
 import com.aetos.backend.repository.ProgramWeeklyRepository;
 import com.aetos.backend.repository.UserRepository;
+import com.aetos.backend.service.NotificationScheduler;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -23,11 +24,13 @@ public class ProgramController {
     private final ProgramWeeklyRepository programRepository;
     private final UserRepository userRepository;
     private final LocationRepository locationRepository;
+    private final NotificationScheduler notificationScheduler;
 
-    public ProgramController(ProgramWeeklyRepository programRepository, UserRepository userRepository, LocationRepository locationRepository) {
+    public ProgramController(ProgramWeeklyRepository programRepository, UserRepository userRepository, LocationRepository locationRepository, NotificationScheduler notificationScheduler) {
         this.programRepository = programRepository;
         this.userRepository = userRepository;
         this.locationRepository = locationRepository;
+        this.notificationScheduler = notificationScheduler;
     }
 
     // Get program for current week (any authenticated user can view)
@@ -140,8 +143,9 @@ public class ProgramController {
         program.setResponsableOracionIntercesora((String) programData.get("responsableOracionIntercesora"));
         program.setResponsableTema((String) programData.get("responsableTema"));
         
-        programRepository.save(program);
-        return ResponseEntity.ok(program);
+        ProgramWeekly saved = programRepository.save(program);
+        notificationScheduler.reschedule(saved);
+        return ResponseEntity.ok(saved);
     }
 
     // Get all programs (history)
@@ -173,6 +177,7 @@ public class ProgramController {
         }
 
         programRepository.deleteById(id);
+        notificationScheduler.cancel(id);
         return ResponseEntity.ok(Map.of("message", "Program deleted"));
     }
 
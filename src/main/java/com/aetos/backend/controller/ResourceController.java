@@ -1,28 +1,58 @@
 package com.aetos.backend.controller;
 
 import com.aetos.backend.model.Resource;
+import com.aetos.backend.model.UploadSession;
+import com.aetos.backend.model.ThumbnailStatus;
 import com.aetos.backend.model.User;
+import com.aetos.backend.repository.ResourceCard;
 import com.aetos.backend.repository.ResourceRepository;
 import com.aetos.backend.repository.UserRepository;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.PDFRenderer;
+import com.aetos.backend.service.ChunkedUploadService;
+import com.aetos.backend.service.ContentAddressedStore;
+import com.aetos.backend.service.ImageCache;
+import com.aetos.backend.service.ImageDerivativeService;
+import com.aetos.backend.service.ResourceBundleService;
+import com.aetos.backend.service.ResourceSearchIndex;
+import com.aetos.backend.service.ThumbnailService;
+import com.aetos.backend.storage.BlobStore;
+import com.aetos.backend.util.KeysetCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.imageio.ImageIO;
-import java.io.File;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/resources")
@@ -31,23 +61,47 @@ public class ResourceController {
 
     private final ResourceRepository resourceRepository;
     private final UserRepository userRepository;
-    private final String uploadBase = (System.getenv("RESOURCES_DIR") != null && !System.getenv("RESOURCES_DIR").isBlank())
-            ? System.getenv("RESOURCES_DIR")
-            : System.getProperty("user.home") + "/aetos-resources";
-    private final String uploadDir = uploadBase.endsWith("/") ? uploadBase : uploadBase + "/";
-    private final String thumbnailDir = uploadDir + "thumbnails/";
+    private final ThumbnailService thumbnailService;
+    private final ContentAddressedStore contentStore;
+    private final BlobStore blobStore;
+    private final ChunkedUploadService chunkedUploads;
+    private final ResourceSearchIndex searchIndex;
+    private final ImageCache imageCache;
+    private final ImageDerivativeService derivatives;
+    private final ResourceBundleService bundleService;
 
-    public ResourceController(ResourceRepository resourceRepository, UserRepository userRepository) {
+    // Vigencia de las URLs firmadas cuando el almacenamiento sirve las descargas directamente
+    @Value("${storage.presign-ttl:10m}")
+    private Duration presignTtl;
+
+    private static final List<String> ALLOWED_EXTENSIONS =
+            List.of("pdf","doc","docx","xls","xlsx","ppt","pptx","png","jpg","jpeg","gif","webp");
+
+    private static final int MAX_ZIP_FILES = 100;
+
+    // Cabecera con el offset confirmado en las subidas por partes
+    private static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+
+    // Atributos de request con los que Tomcat (NIO) delega el envío del archivo a sendfile
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    public ResourceController(ResourceRepository resourceRepository, UserRepository userRepository, ThumbnailService thumbnailService,
+                              ContentAddressedStore contentStore, BlobStore blobStore, ChunkedUploadService chunkedUploads,
+                              ResourceSearchIndex searchIndex, ImageCache imageCache,
+                              ImageDerivativeService derivatives, ResourceBundleService bundleService) {
         this.resourceRepository = resourceRepository;
         this.userRepository = userRepository;
-        
-        // Crear directorios si no existen
-        try {
-            Files.createDirectories(Paths.get(uploadDir));
-            Files.createDirectories(Paths.get(thumbnailDir));
-        } catch (IOException e) {
-            System.err.println("Error creando directorios: " + e.getMessage());
-        }
+        this.thumbnailService = thumbnailService;
+        this.contentStore = contentStore;
+        this.blobStore = blobStore;
+        this.chunkedUploads = chunkedUploads;
+        this.searchIndex = searchIndex;
+        this.imageCache = imageCache;
+        this.derivatives = derivatives;
+        this.bundleService = bundleService;
     }
     //
     private boolean canEditOrDeleteResource(String userEmail, Resource resource) {
@@ -68,7 +122,15 @@ public class ResourceController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Resource>> getAllResources() {
+    public ResponseEntity<?> getAllResources(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "uploader", required = false) String uploader,
+            @RequestParam(value = "type", required = false) String type) {
+        // Con limit o cursor: página de tarjetas; sin ellos, la lista completa de siempre
+        if (limit != null || cursor != null || uploader != null || type != null) {
+            return cardPage(uploader, type, limit, cursor);
+        }
         try {
             List<Resource> resources = resourceRepository.findAllByOrderByFechaSubidaDesc();
             return ResponseEntity.ok(resources);
@@ -78,13 +140,95 @@ public class ResourceController {
         }
     }
 
+    // Página de tarjetas por keyset (fechaSubida, id), opcionalmente por autor y extensión
+    private ResponseEntity<?> cardPage(String uploader, String type, Integer limit, String cursor) {
+        KeysetCursor after;
+        try {
+            after = KeysetCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        String ext = type == null || type.isBlank() ? null : type.trim().toLowerCase();
+        if (ext != null && !ALLOWED_EXTENSIONS.contains(ext)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Tipo de archivo no válido"));
+        }
+        try {
+            int size = KeysetCursor.clampLimit(limit);
+            var pageable = PageRequest.of(0, size + 1);
+            boolean byUser = uploader != null && !uploader.isBlank();
+            // Sin tipo no se agrega ningún predicado sobre la extensión
+            List<ResourceCard> page;
+            if (after == null) {
+                if (byUser) {
+                    page = ext == null
+                            ? resourceRepository.findCardsByUser(uploader, pageable)
+                            : resourceRepository.findCardsByUserAndType(uploader, ext, pageable);
+                } else {
+                    page = ext == null
+                            ? resourceRepository.findCards(pageable)
+                            : resourceRepository.findCardsByType(ext, pageable);
+                }
+            } else if (byUser) {
+                page = ext == null
+                        ? resourceRepository.findCardsByUserBefore(uploader, after.fecha(), after.id(), pageable)
+                        : resourceRepository.findCardsByUserAndTypeBefore(uploader, ext, after.fecha(), after.id(), pageable);
+            } else {
+                page = ext == null
+                        ? resourceRepository.findCardsBefore(after.fecha(), after.id(), pageable)
+                        : resourceRepository.findCardsByTypeBefore(ext, after.fecha(), after.id(), pageable);
+            }
+            boolean hasMore = page.size() > size;
+            if (hasMore) page = page.subList(0, size);
+            
+            Map<String, Object> response = new java.util.HashMap<>();
+            response.put("resources", page);
+            response.put("hasMore", hasMore);
+            if (hasMore) {
+                ResourceCard last = page.get(page.size() - 1);
+                response.put("nextCursor", new KeysetCursor(last.getFechaSubida(), last.getId()).encode());
+            } else {
+                response.put("nextCursor", null);
+            }
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            System.err.println("Error listando recursos: " + e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    // Búsqueda por nombre, descripción y texto de los PDF, ordenada por relevancia
+    @GetMapping("/search")
+    public ResponseEntity<?> searchResources(@RequestParam("q") String q,
+                                             @RequestParam(value = "limit", required = false) Integer limit) {
+        if (q == null || q.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "El parámetro q es requerido"));
+        }
+        if (q.length() > 200) {
+            return ResponseEntity.badRequest().body(Map.of("error", "La búsqueda es demasiado larga"));
+        }
+        try {
+            int max = limit == null ? 20 : Math.max(1, Math.min(limit, 50));
+            return ResponseEntity.ok(searchIndex.search(q.trim(), max));
+        } catch (Exception e) {
+            System.err.println("Error buscando recursos: " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", "Error al buscar recursos"));
+        }
+    }
+
     @GetMapping("/my-resources")
-    public ResponseEntity<List<Resource>> getMyResources(Authentication auth) {
+    public ResponseEntity<?> getMyResources(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "type", required = false) String type,
+            Authentication auth) {
         if (auth == null || auth.getPrincipal() == null) {
             return ResponseEntity.status(401).build();
         }
         
         String email = (String) auth.getPrincipal();
+        if (limit != null || cursor != null || type != null) {
+            return cardPage(email, type, limit, cursor);
+        }
         try {
             List<Resource> resources = resourceRepository.findByUsuarioEmailOrderByFechaSubidaDesc(email);
             return ResponseEntity.ok(resources);
@@ -122,7 +266,7 @@ public class ResourceController {
                 if (ct.startsWith("image/")) ext = "png";
                 else if (ct.contains("pdf")) ext = "pdf";
             }
-            if (!List.of("pdf","doc","docx","xls","xlsx","ppt","pptx","png","jpg","jpeg","gif","webp").contains(ext)) {
+            if (!ALLOWED_EXTENSIONS.contains(ext)) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Tipo de archivo no permitido"));
             }
             
@@ -132,49 +276,214 @@ public class ResourceController {
                 return ResponseEntity.status(401).body(Map.of("error", "Usuario no encontrado"));
             }
             
-            // Generar nombre único preservando extensión
-            String uniqueFileName = UUID.randomUUID().toString() + "." + ext;
-            String filePath = uploadDir + uniqueFileName;
+            // Guardar el archivo por contenido (<sha256>.<ext>): subidas repetidas comparten blob
+            var staged = contentStore.stage(file.getInputStream(), BlobStore.RESOURCES, ext,
+                    contentTypeOf("x." + ext).toString());
             
-            // Guardar el archivo
-            File destinationFile = new File(filePath);
-            file.transferTo(destinationFile);
+            Resource savedResource = publishResource(staged, nombre, descripcion, originalName, email, user);
             
-            // Generar thumbnail
-            String thumbnailFileName = UUID.randomUUID().toString() + ".png";
-            String thumbnailPath = thumbnailDir + thumbnailFileName;
-            if ("pdf".equals(ext)) {
-                generateThumbnail(filePath, thumbnailPath);
-            } else if (isImageExt(ext)) {
-                generateImageThumbnail(filePath, thumbnailPath);
-            } else {
-                generatePlaceholderThumbnail(ext.toUpperCase(), thumbnailPath);
+            return ResponseEntity.ok(Map.of(
+                    "message", "Recurso subido exitosamente",
+                    "resource", savedResource
+            ));
+            
+        } catch (Exception e) {
+            System.err.println("Error subiendo recurso: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.status(500).body(Map.of("error", "Error al subir el archivo: " + e.getMessage()));
+        }
+    }
+
+    // Registra el recurso sobre el blob publicado y encola su portada (subida simple y por partes)
+    private Resource publishResource(ContentAddressedStore.StagedBlob staged, String nombre, String descripcion,
+                                     String originalName, String email, User user) throws IOException {
+        Resource savedResource = contentStore.commit(staged, blob -> {
+            // Si otro recurso con el mismo contenido ya tiene portada, se reutiliza sin renderizar
+            Resource twin = resourceRepository
+                    .findFirstByContentHashAndThumbnailStatus(blob.sha256(), ThumbnailStatus.READY)
+                    .orElse(null);
+            if (twin != null && !blobStore.exists(BlobStore.THUMBNAILS, twin.getRutaPortada())) {
+                twin = null;
             }
             
             // Crear el registro en la base de datos
             Resource resource = Resource.builder()
                     .nombre(nombre)
                     .nombreArchivo(originalName)
-                    .rutaArchivo(uniqueFileName)
-                    .rutaPortada(thumbnailFileName)
+                    .rutaArchivo(blob.fileName())
+                    .rutaPortada(twin != null ? twin.getRutaPortada() : blob.sha256() + ".png")
                     .usuarioEmail(email)
                     .usuarioNombre(user.getNombre() + " " + user.getApellidos())
                     .fechaSubida(LocalDateTime.now())
-                    .tamanioBytes(file.getSize())
+                    .tamanioBytes(blob.size())
                     .descripcion(descripcion)
+                    .contentHash(blob.sha256())
+                    .extension(staged.ext().isEmpty() ? null : staged.ext())
+                    .thumbnailStatus(twin != null ? ThumbnailStatus.READY : ThumbnailStatus.PENDING)
                     .build();
+            if (blob.reused()) {
+                System.out.println("♻️ Contenido ya almacenado, se reutiliza " + blob.fileName());
+            }
+            return resourceRepository.save(resource);
+        }, () -> resourceRepository.countByRutaArchivo(staged.fileName()));
+        
+        // La portada se genera en segundo plano; hasta entonces se sirve la genérica
+        if (savedResource.getThumbnailStatus() == ThumbnailStatus.PENDING) {
+            thumbnailService.submit(savedResource);
+        }
+        searchIndex.indexResource(savedResource);
+        return savedResource;
+    }
+
+    /*
+     * Subida reanudable por partes:
+     *   POST   /uploads                 {nombre, descripcion, fileName, size, sha256?} -> uploadId, chunkSize
+     *   HEAD   /uploads/{id}            offset confirmado en Upload-Offset
+     *   PATCH  /uploads/{id}            cuerpo binario a partir de Upload-Offset
+     *   POST   /uploads/{id}/complete   verifica y crea el recurso
+     *   DELETE /uploads/{id}            cancela
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<?> createUploadSession(@RequestBody Map<String, Object> body, Authentication auth) {
+        if (auth == null || auth.getPrincipal() == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "No autenticado"));
+        }
+        String email = (String) auth.getPrincipal();
+        
+        try {
+            String nombre = body.get("nombre") != null ? body.get("nombre").toString() : null;
+            String fileName = body.get("fileName") != null ? body.get("fileName").toString() : null;
+            if (nombre == null || nombre.isBlank() || fileName == null || !(body.get("size") instanceof Number size)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "nombre, fileName y size son requeridos"));
+            }
+            String ext = getFileExtension(fileName).toLowerCase();
+            if (!ALLOWED_EXTENSIONS.contains(ext)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Tipo de archivo no permitido"));
+            }
+            String descripcion = body.get("descripcion") != null ? body.get("descripcion").toString() : null;
+            String sha256 = body.get("sha256") != null ? body.get("sha256").toString() : null;
             
-            Resource savedResource = resourceRepository.save(resource);
+            UploadSession session = chunkedUploads.create(email, nombre, descripcion, fileName, ext, size.longValue(), sha256);
+            System.out.println("📦 Subida por partes iniciada: " + session.getId() + " (" + session.getTotalBytes() + " bytes)");
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(UPLOAD_OFFSET_HEADER, "0")
+                    .body(Map.of(
+                            "uploadId", session.getId(),
+                            "offset", 0,
+                            "size", session.getTotalBytes(),
+                            "chunkSize", chunkedUploads.maxChunkSize()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("Error creando subida por partes: " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", "Error al iniciar la subida"));
+        }
+    }
+
+    @RequestMapping(value = "/uploads/{uploadId}", method = {RequestMethod.HEAD, RequestMethod.GET})
+    public ResponseEntity<?> uploadSessionStatus(@PathVariable String uploadId, Authentication auth) {
+        if (auth == null || auth.getPrincipal() == null) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            UploadSession session = chunkedUploads.find(uploadId, (String) auth.getPrincipal()).orElse(null);
+            if (session == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "Subida no encontrada"));
+            }
+            long offset = chunkedUploads.offset(session);
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET_HEADER, Long.toString(offset))
+                    .cacheControl(CacheControl.noStore())
+                    .body(Map.of("uploadId", session.getId(), "offset", offset, "size", session.getTotalBytes()));
+        } catch (Exception e) {
+            System.err.println("Error consultando subida: " + e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    @PatchMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> uploadChunk(@PathVariable String uploadId,
+                                         @RequestHeader(UPLOAD_OFFSET_HEADER) long offset,
+                                         HttpServletRequest request,
+                                         Authentication auth) {
+        if (auth == null || auth.getPrincipal() == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "No autenticado"));
+        }
+        try {
+            UploadSession session = chunkedUploads.find(uploadId, (String) auth.getPrincipal()).orElse(null);
+            if (session == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "Subida no encontrada"));
+            }
+            // El cuerpo se escribe directo al temporal, sin buffer en memoria
+            long newOffset = chunkedUploads.append(session, offset, request.getInputStream());
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET_HEADER, Long.toString(newOffset))
+                    .body(Map.of("offset", newOffset, "size", session.getTotalBytes()));
+        } catch (ChunkedUploadService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET_HEADER, Long.toString(e.getCurrentOffset()))
+                    .body(Map.of("error", e.getMessage(), "offset", e.getCurrentOffset()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            // Conexión cortada a mitad de la parte: lo recibido queda y el cliente consulta el offset
+            System.err.println("Error recibiendo parte de " + uploadId + ": " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", "Error al recibir la parte"));
+        }
+    }
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<?> completeUpload(@PathVariable String uploadId, Authentication auth) {
+        if (auth == null || auth.getPrincipal() == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "No autenticado"));
+        }
+        String email = (String) auth.getPrincipal();
+        
+        try {
+            UploadSession session = chunkedUploads.find(uploadId, email).orElse(null);
+            if (session == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "Subida no encontrada"));
+            }
+            User user = userRepository.findByEmail(email).orElse(null);
+            if (user == null) {
+                return ResponseEntity.status(401).body(Map.of("error", "Usuario no encontrado"));
+            }
+            
+            var staged = chunkedUploads.complete(session, contentTypeOf("x." + session.getExtension()).toString());
+            Resource savedResource = publishResource(staged, session.getNombre(), session.getDescripcion(),
+                    session.getNombreArchivo(), email, user);
             
             return ResponseEntity.ok(Map.of(
                     "message", "Recurso subido exitosamente",
                     "resource", savedResource
             ));
-            
+        } catch (ChunkedUploadService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET_HEADER, Long.toString(e.getCurrentOffset()))
+                    .body(Map.of("error", "La subida está incompleta", "offset", e.getCurrentOffset()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            System.err.println("Error subiendo recurso: " + e.getMessage());
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(Map.of("error", "Error al subir el archivo: " + e.getMessage()));
+            System.err.println("Error finalizando subida " + uploadId + ": " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", "Error al finalizar la subida"));
+        }
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> abortUpload(@PathVariable String uploadId, Authentication auth) {
+        if (auth == null || auth.getPrincipal() == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "No autenticado"));
+        }
+        try {
+            UploadSession session = chunkedUploads.find(uploadId, (String) auth.getPrincipal()).orElse(null);
+            if (session == null) {
+                return ResponseEntity.status(404).body(Map.of("error", "Subida no encontrada"));
+            }
+            chunkedUploads.abort(session);
+            return ResponseEntity.noContent().build();
+        } catch (Exception e) {
+            System.err.println("Error cancelando subida " + uploadId + ": " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", "Error al cancelar la subida"));
         }
     }
 
@@ -205,6 +514,7 @@ public class ResourceController {
             resource.setNombre(nombre);
             resource.setDescripcion(descripcion);
             resourceRepository.save(resource);
+            searchIndex.indexMetadata(resource);
             
             return ResponseEntity.ok(Map.of(
                     "message", "Recurso actualizado exitosamente",
@@ -236,16 +546,14 @@ public class ResourceController {
                 return ResponseEntity.status(403).body(Map.of("error", "No tienes permiso para eliminar este recurso"));
             }
             
-            // Eliminar archivos físicos
-            try {
-                Files.deleteIfExists(Paths.get(uploadDir + resource.getRutaArchivo()));
-                Files.deleteIfExists(Paths.get(thumbnailDir + resource.getRutaPortada()));
-            } catch (IOException e) {
-                System.err.println("Error eliminando archivos físicos: " + e.getMessage());
-            }
-            
             resourceRepository.delete(resource);
             
+            // Eliminar archivos físicos solo si ningún otro recurso los referencia
+            contentStore.release(BlobStore.RESOURCES, resource.getRutaArchivo(),
+                    () -> resourceRepository.countByRutaArchivo(resource.getRutaArchivo()));
+            contentStore.release(BlobStore.THUMBNAILS, resource.getRutaPortada(),
+                    () -> resourceRepository.countByRutaPortada(resource.getRutaPortada()));
+            
             return ResponseEntity.ok(Map.of("message", "Recurso eliminado exitosamente"));
             
         } catch (Exception e) {
@@ -254,30 +562,81 @@ public class ResourceController {
         }
     }
 
+    // Varios recursos en un ZIP armado al vuelo (ids en el orden pedido)
+    @GetMapping("/download/zip")
+    public ResponseEntity<?> downloadZip(@RequestParam("ids") List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Indica al menos un recurso"));
+        }
+        if (ids.size() > MAX_ZIP_FILES) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Máximo " + MAX_ZIP_FILES + " recursos por descarga"));
+        }
+        try {
+            Map<Long, Resource> byId = new java.util.HashMap<>();
+            resourceRepository.findAllById(ids).forEach(r -> byId.put(r.getId(), r));
+            List<Resource> resources = ids.stream().distinct().map(byId::get).filter(java.util.Objects::nonNull).toList();
+            if (resources.isEmpty()) {
+                return ResponseEntity.status(404).body(Map.of("error", "Recursos no encontrados"));
+            }
+            
+            StreamingResponseBody body = out -> bundleService.writeZip(resources, out);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/zip"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                            .filename("recursos.zip")
+                            .build()
+                            .toString())
+                    .cacheControl(CacheControl.noStore())
+                    .body(body);
+        } catch (Exception e) {
+            System.err.println("Error preparando ZIP de recursos: " + e.getMessage());
+            return ResponseEntity.status(500).body(Map.of("error", "Error al preparar la descarga"));
+        }
+    }
+
     @GetMapping("/download/{id}")
-    public ResponseEntity<?> downloadResource(@PathVariable Long id) {
+    public ResponseEntity<?> downloadResource(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) {
         try {
             Resource resource = resourceRepository.findById(id).orElse(null);
             if (resource == null) {
                 return ResponseEntity.status(404).body("Recurso no encontrado");
             }
             
-            Path filePath = Paths.get(uploadDir + resource.getRutaArchivo());
-            if (!Files.exists(filePath)) {
+            String key = resource.getRutaArchivo();
+            Optional<BlobStore.BlobInfo> info = statOrEmpty(BlobStore.RESOURCES, key);
+            if (info.isEmpty()) {
                 return ResponseEntity.status(404).body("Archivo no encontrado");
             }
             
-            byte[] fileContent = Files.readAllBytes(filePath);
+            MediaType mediaType = contentTypeOf(key);
+            ContentDisposition disposition = ContentDisposition.attachment()
+                    .filename(resource.getNombreArchivo(), StandardCharsets.UTF_8)
+                    .build();
             
-            MediaType mediaType = MediaType.APPLICATION_OCTET_STREAM;
-            try {
-                String probed = Files.probeContentType(filePath);
-                if (probed != null) mediaType = MediaType.parseMediaType(probed);
-            } catch (Exception ignore) {}
+            Optional<Path> local = blobStore.localPath(BlobStore.RESOURCES, key);
+            if (local.isPresent()) {
+                return serveFile(local.get(), mediaType, disposition, request, response);
+            }
+            
+            // Almacenamiento remoto: el cliente descarga directo con una URL firmada (Range incluido)
+            Optional<URI> presigned = blobStore.presignedGet(BlobStore.RESOURCES, key, presignTtl,
+                    mediaType.toString(), disposition.toString());
+            if (presigned.isPresent()) {
+                return ResponseEntity.status(HttpStatus.FOUND)
+                        .location(presigned.get())
+                        .cacheControl(CacheControl.noStore())
+                        .build();
+            }
+            StreamingResponseBody body = out -> {
+                try (InputStream in = blobStore.get(BlobStore.RESOURCES, key)) {
+                    in.transferTo(out);
+                }
+            };
             return ResponseEntity.ok()
                     .contentType(mediaType)
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getNombreArchivo() + "\"")
-                    .body(fileContent);
+                    .contentLength(info.get().size())
+                    .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                    .body(body);
                     
         } catch (Exception e) {
             System.err.println("Error descargando recurso: " + e.getMessage());
@@ -285,23 +644,133 @@ public class ResourceController {
         }
     }
 
+    /**
+     * Sirve un archivo desde disco sin cargarlo en memoria: responde 304 si el
+     * cliente tiene la versión vigente (ETag / Last-Modified), 206 con las
+     * regiones pedidas en Range (si If-Range coincide) y, para el archivo
+     * completo, usa sendfile cuando el contenedor lo soporta o una copia por
+     * FileChannel en caso contrario.
+     */
+    private ResponseEntity<?> serveFile(Path filePath, MediaType mediaType, ContentDisposition disposition,
+                                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long size = Files.size(filePath);
+        long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(mediaType);
+        headers.setContentDisposition(disposition);
+        headers.setETag(etag);
+        headers.setLastModified(lastModified);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), etag, lastModified)) {
+            List<ResourceRegion> regions;
+            try {
+                // Lanza IllegalArgumentException si el rango es inválido o cae fuera del archivo
+                regions = HttpRange.toResourceRegions(HttpRange.parseRanges(range), new FileSystemResource(filePath));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                        .build();
+            }
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(regions);
+        }
+
+        headers.setContentLength(size);
+        if (size > 0 && !"HEAD".equals(request.getMethod())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            // Tomcat envía el archivo con sendfile al terminar la request (sin pasar por el heap)
+            request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, 0L);
+            request.setAttribute(SENDFILE_END_ATTR, size);
+            return ResponseEntity.ok().headers(headers).build();
+        }
+
+        StreamingResponseBody body = out -> {
+            try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = 0;
+                while (position < size) {
+                    long sent = channel.transferTo(position, size - position, target);
+                    if (sent <= 0) break;
+                    position += sent;
+                }
+            }
+        };
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    // Sin If-Range se atienden los rangos; con If-Range solo si coincide ETag o fecha
+    private static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null || ifRange.isBlank()) return true;
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return value.equals(etag);
+        }
+        try {
+            long since = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return lastModified / 1000 == since / 1000;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     @GetMapping("/thumbnail/{filename}")
-    public ResponseEntity<?> getThumbnail(@PathVariable String filename) {
+    public ResponseEntity<?> getThumbnail(@PathVariable String filename,
+                                          @RequestParam(value = "w", required = false) Integer width,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (width != null && !derivatives.allowedWidths().contains(width)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Ancho no permitido, usa uno de " + derivatives.allowedWidths()));
+        }
         try {
-            Path thumbnailPath = Paths.get(thumbnailDir + filename);
-            if (!Files.exists(thumbnailPath)) {
-                try {
-                    generatePlaceholderThumbnail("FILE", thumbnailPath.toString());
-                } catch (IOException e) {
-                    return ResponseEntity.status(404).build();
-                }
+            Optional<ImageDerivativeService.Variant> variant;
+            Optional<ImageCache.Entry> image;
+            try {
+                // Con ?w= una versión más chica para listados compactos
+                variant = width == null
+                        ? Optional.of(new ImageDerivativeService.Variant(BlobStore.THUMBNAILS, filename))
+                        : derivatives.variant(BlobStore.THUMBNAILS, filename, width);
+                image = variant.isEmpty() ? Optional.empty()
+                        : imageCache.get(variant.get().namespace(), variant.get().key());
+            } catch (IllegalArgumentException e) {
+                variant = Optional.empty();
+                image = Optional.empty();
+            }
+            if (image.isEmpty()) {
+                // Portada pendiente o fallida (se reintenta): genérica sin caché para que el cliente reciba la real luego
+                return ResponseEntity.ok()
+                        .contentType(MediaType.IMAGE_PNG)
+                        .cacheControl(CacheControl.noStore())
+                        .body(thumbnailService.placeholderPng());
+            }
+            if (image.get().data() != null) {
+                return CachedImageResponses.of(image.get(), ifNoneMatch, MediaType.IMAGE_PNG);
             }
             
-            byte[] imageContent = Files.readAllBytes(thumbnailPath);
-            
+            // Demasiado grande para la caché: directo del almacenamiento, el mismo archivo que dio el etag
+            String servedNamespace = variant.get().namespace();
+            String servedKey = variant.get().key();
+            Optional<URI> presigned = blobStore.presignedGet(servedNamespace, servedKey, presignTtl,
+                    MediaType.IMAGE_PNG_VALUE, null);
+            if (presigned.isPresent()) {
+                return ResponseEntity.status(HttpStatus.FOUND).location(presigned.get()).build();
+            }
+            StreamingResponseBody body = out -> {
+                try (InputStream in = blobStore.get(servedNamespace, servedKey)) {
+                    in.transferTo(out);
+                }
+            };
             return ResponseEntity.ok()
                     .contentType(MediaType.IMAGE_PNG)
-                    .body(imageContent);
+                    .eTag(image.get().etag())
+                    .header(HttpHeaders.CACHE_CONTROL, CachedImageResponses.IMMUTABLE)
+                    .body(body);
                     
         } catch (Exception e) {
             System.err.println("Error obteniendo thumbnail: " + e.getMessage());
@@ -309,20 +778,17 @@ public class ResourceController {
         }
     }
 
-    private void generateThumbnail(String pdfPath, String thumbnailPath) throws IOException {
-        try (PDDocument document = PDDocument.load(new File(pdfPath))) {
-            PDFRenderer pdfRenderer = new PDFRenderer(document);
-            java.awt.image.BufferedImage bufferedImage = pdfRenderer.renderImageWithDPI(0, 150);
-            ImageIO.write(bufferedImage, "PNG", new File(thumbnailPath));
-            System.out.println("Thumbnail generado exitosamente: " + thumbnailPath);
-        } catch (Exception e) {
-            System.err.println("Error generando thumbnail: " + e.getMessage());
-            throw new IOException("No se pudo generar la miniatura del PDF", e);
+    // Una clave inválida (p. ej. con "../") se trata igual que un archivo inexistente
+    private Optional<BlobStore.BlobInfo> statOrEmpty(String namespace, String key) throws IOException {
+        try {
+            return blobStore.stat(namespace, key);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
         }
     }
 
-    private boolean isImageExt(String ext) {
-        return List.of("png","jpg","jpeg","gif","webp").contains(ext);
+    private static MediaType contentTypeOf(String fileName) {
+        return MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
     }
 
     private String getFileExtension(String filename) {
@@ -330,36 +796,4 @@ public class ResourceController {
         int i = filename.lastIndexOf('.');
         return i >= 0 ? filename.substring(i + 1) : "";
     }
-
-    private void generateImageThumbnail(String imagePath, String thumbnailPath) throws IOException {
-        java.awt.image.BufferedImage img = ImageIO.read(new File(imagePath));
-        if (img == null) throw new IOException("No se pudo leer la imagen");
-        int w = img.getWidth();
-        int h = img.getHeight();
-        int tw = 300;
-        int th = Math.max(1, (int) ((double) h / w * tw));
-        java.awt.image.BufferedImage out = new java.awt.image.BufferedImage(tw, th, java.awt.image.BufferedImage.TYPE_INT_ARGB);
-        java.awt.Graphics2D g = out.createGraphics();
-        g.setRenderingHint(java.awt.RenderingHints.KEY_INTERPOLATION, java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.drawImage(img, 0, 0, tw, th, null);
-        g.dispose();
-        ImageIO.write(out, "PNG", new File(thumbnailPath));
-    }
-
-    private void generatePlaceholderThumbnail(String label, String thumbnailPath) throws IOException {
-        int w = 300, h = 400;
-        java.awt.image.BufferedImage out = new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_ARGB);
-        java.awt.Graphics2D g = out.createGraphics();
-        g.setColor(new java.awt.Color(59, 130, 246));
-        g.fillRect(0, 0, w, h);
-        g.setColor(java.awt.Color.WHITE);
-        g.setFont(new java.awt.Font("SansSerif", java.awt.Font.BOLD, 92));
-        java.awt.FontMetrics fm = g.getFontMetrics();
-        int sw = fm.stringWidth(label);
-        int x = Math.max(10, (w - sw) / 2);
-        int y = h / 2 + fm.getAscent() / 2;
-        g.drawString(label, x, y);
-        g.dispose();
-        ImageIO.write(out, "PNG", new File(thumbnailPath));
-    }
 }
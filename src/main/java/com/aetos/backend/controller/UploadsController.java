@@ -0,0 +1,101 @@
+package com.aetos.backend.controller;
+
+import com.aetos.backend.service.ImageCache;
+import com.aetos.backend.service.ImageDerivativeService;
+import com.aetos.backend.storage.BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Fotos de perfil (/api/uploads/profiles/...), servidas desde ImageCache con
+ * ETag y caché inmutable tanto con almacenamiento local como S3. Con
+ * {@code ?w=} se sirve una versión reducida (ImageDerivativeService). Las fotos que
+ * no caben en la caché se transmiten desde disco o se redirigen a una URL
+ * firmada.
+ */
+@RestController
+public class UploadsController {
+
+    private final BlobStore blobStore;
+    private final ImageCache imageCache;
+    private final ImageDerivativeService derivatives;
+
+    @Value("${storage.presign-ttl:10m}")
+    private Duration presignTtl;
+
+    public UploadsController(BlobStore blobStore, ImageCache imageCache, ImageDerivativeService derivatives) {
+        this.blobStore = blobStore;
+        this.imageCache = imageCache;
+        this.derivatives = derivatives;
+    }
+
+    @GetMapping({"/api/uploads/profiles/{filename}", "/uploads/profiles/{filename}"})
+    public ResponseEntity<?> profilePhoto(@PathVariable String filename,
+                                          @RequestParam(value = "w", required = false) Integer width,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (width != null && !derivatives.allowedWidths().contains(width)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Ancho no permitido, usa uno de " + derivatives.allowedWidths()));
+        }
+        try {
+            // Con ?w= se sirve una versión reducida (avatares) en lugar de la foto completa
+            String namespace = BlobStore.PROFILES;
+            String key = filename;
+            if (width != null) {
+                Optional<ImageDerivativeService.Variant> variant = derivatives.variant(namespace, key, width);
+                if (variant.isEmpty()) {
+                    return ResponseEntity.notFound().build();
+                }
+                namespace = variant.get().namespace();
+                key = variant.get().key();
+            }
+            String servedNamespace = namespace;
+            String servedKey = key;
+            
+            MediaType mediaType = MediaTypeFactory.getMediaType(key).orElse(MediaType.APPLICATION_OCTET_STREAM);
+            Optional<ImageCache.Entry> image = imageCache.get(namespace, key);
+            if (image.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            if (image.get().data() != null) {
+                return CachedImageResponses.of(image.get(), ifNoneMatch, mediaType);
+            }
+
+            Optional<URI> url = blobStore.presignedGet(namespace, key, presignTtl, mediaType.toString(), null);
+            if (url.isPresent()) {
+                return ResponseEntity.status(HttpStatus.FOUND).location(url.get()).build();
+            }
+            StreamingResponseBody body = out -> {
+                try (InputStream in = blobStore.get(servedNamespace, servedKey)) {
+                    in.transferTo(out);
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(mediaType)
+                    .contentLength(image.get().size())
+                    .eTag(image.get().etag())
+                    .header(HttpHeaders.CACHE_CONTROL, CachedImageResponses.IMMUTABLE)
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            System.err.println("Error obteniendo foto de perfil: " + e.getMessage());
+            return ResponseEntity.status(500).build();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.aetos.backend.controller;
 import com.aetos.backend.model.Role;
 import com.aetos.backend.model.User;
 import com.aetos.backend.repository.UserRepository;
+import com.aetos.backend.security.TokenVersionRegistry;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -17,9 +18,11 @@ import java.util.stream.Collectors;
 public class UserManagementController {
 
     private final UserRepository userRepository;
+    private final TokenVersionRegistry tokenVersionRegistry;
 
-    public UserManagementController(UserRepository userRepository) {
+    public UserManagementController(UserRepository userRepository, TokenVersionRegistry tokenVersionRegistry) {
         this.userRepository = userRepository;
+        this.tokenVersionRegistry = tokenVersionRegistry;
     }
 
     // Listar todos los usuarios (solo ADMIN)
@@ -85,7 +88,8 @@ public class UserManagementController {
         try {
             Role role = Role.valueOf(newRole.toUpperCase());
             user.setRol(role);
-            userRepository.save(user);
+            // Los tokens emitidos con el rol anterior dejan de ser válidos
+            tokenVersionRegistry.bumpAndSave(user);
             return ResponseEntity.ok(Map.of("message", "Rol actualizado exitosamente", "user", user));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(400).body(Map.of("error", "Rol inválido"));
@@ -118,6 +122,7 @@ public class UserManagementController {
         }
         
         userRepository.delete(user);
+        tokenVersionRegistry.forget(user.getId());
         return ResponseEntity.ok(Map.of("message", "Usuario eliminado exitosamente"));
     }
 }
@@ -0,0 +1,8 @@
+package com.aetos.backend.event;
+
+/**
+ * Se publica cuando cambia la reunión activa: se abre, se cierra o se regenera su QR.
+ * meetingId es null si ya no hay reunión activa.
+ */
+public record ActiveMeetingChangedEvent(Long meetingId, long version) {
+}
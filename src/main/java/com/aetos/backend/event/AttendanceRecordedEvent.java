@@ -0,0 +1,17 @@
+package com.aetos.backend.event;
+
+import com.aetos.backend.model.Role;
+
+import java.time.LocalDateTime;
+
+/**
+ * Se publica cada vez que se registra una asistencia (QR o manual).
+ */
+public record AttendanceRecordedEvent(
+        Long meetingId,
+        Long userId,
+        String userName,
+        Role role,
+        LocalDateTime timestamp,
+        boolean manual) {
+}
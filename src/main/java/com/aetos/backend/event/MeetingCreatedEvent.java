@@ -0,0 +1,9 @@
+package com.aetos.backend.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * Se publica cuando se crea una nueva reunión.
+ */
+public record MeetingCreatedEvent(Long meetingId, LocalDateTime fecha) {
+}
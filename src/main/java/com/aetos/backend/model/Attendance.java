@@ -6,7 +6,8 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "attendances")
+// El índice único (meeting_id, user_id) lo crea CheckInPipeline al arrancar, tras limpiar duplicados heredados
+@Table(name = "attendances", indexes = @Index(name = "idx_attendances_user", columnList = "user_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
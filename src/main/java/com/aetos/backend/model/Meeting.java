@@ -6,7 +6,7 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "meetings")
+@Table(name = "meetings", indexes = @Index(name = "idx_meetings_fecha", columnList = "fecha, id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,4 +22,8 @@ public class Meeting {
     private String tokenQr;
 
     private boolean activa;
+
+    // Último cambio (apertura o nuevo QR); de aquí sale la versión del long-poll
+    @Column(name = "actualizada_en")
+    private LocalDateTime actualizadaEn;
 }
@@ -9,7 +9,10 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", uniqueConstraints = {
+        // Un recordatorio por programa, usuario y tipo; las notificaciones generales dejan program_id en null
+        @UniqueConstraint(name = "uk_notifications_program_user_kind", columnNames = {"program_id", "user_id", "kind"})
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -34,6 +37,12 @@ public class Notification {
     @Column(name = "type")
     private String type; // "whatsapp", "system", "email"
 
+    @Column(name = "program_id")
+    private Long programId;
+
+    @Column(name = "kind", length = 40)
+    private String kind; // "program-reminder"
+
     @ManyToOne
     @JoinColumn(name = "sender_id")
     private User sender;
@@ -0,0 +1,6 @@
+package com.aetos.backend.model;
+
+public enum OutboxChannel {
+    EMAIL,
+    WHATSAPP
+}
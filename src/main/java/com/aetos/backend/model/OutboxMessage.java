@@ -0,0 +1,65 @@
+package com.aetos.backend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+// Mensaje saliente (email o WhatsApp) pendiente de envío; se escribe en la misma transacción que lo origina
+@Entity
+@Table(name = "outbox_messages", indexes = {
+        @Index(name = "idx_outbox_messages_due", columnList = "channel, status, next_attempt_at"),
+        @Index(name = "idx_outbox_messages_sent_at", columnList = "sent_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OutboxChannel channel;
+
+    // Plantilla a usar: "verification", "password-reset", "program-reminder", "whatsapp"
+    @Column(nullable = false, length = 40)
+    private String kind;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    // Parámetros de la plantilla en JSON
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OutboxStatus status;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 500)
+    private String lastError;
+
+    // Notificación que originó el mensaje, si la hay
+    @Column(name = "notification_id")
+    private Long notificationId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    // Cambia en cada toma y en cada renovación del plazo: un despachador con una copia vieja no pisa la toma nueva
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long version;
+}
@@ -0,0 +1,8 @@
+package com.aetos.backend.model;
+
+public enum OutboxStatus {
+    PENDING,    // Esperando envío (o reintento en next_attempt_at)
+    SENDING,    // Tomado por un despachador hasta next_attempt_at; si vence se vuelve a tomar
+    SENT,       // Entregado al proveedor (SMTP / Twilio)
+    FAILED      // Agotó los reintentos
+}
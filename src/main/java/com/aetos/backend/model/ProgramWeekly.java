@@ -4,9 +4,13 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 
 @Entity
-@Table(name = "program_weekly")
+@Table(name = "program_weekly", indexes = {
+        @Index(name = "idx_program_weekly_inicio", columnList = "inicio")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -20,6 +24,9 @@ public class ProgramWeekly {
     private String hora; // time of the program (default 8:00 PM)
     private String horaFin; // end time of the program (default 10:00 PM)
 
+    // weekStart + hora como timestamp, para buscar por rango con índice
+    private LocalDateTime inicio;
+
     @ManyToOne
     @JoinColumn(name = "location_id")
     private Location location;
@@ -30,4 +37,17 @@ public class ProgramWeekly {
     private String responsableEspecial;
     private String responsableOracionIntercesora;
     private String responsableTema;
+
+    @PrePersist
+    @PreUpdate
+    public void refreshInicio() {
+        inicio = null;
+        if (weekStart == null || hora == null) return;
+        try {
+            String[] parts = hora.trim().split(":");
+            inicio = weekStart.atTime(LocalTime.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+        } catch (RuntimeException e) {
+            // Hora con formato inesperado: el programa no tendrá recordatorio
+        }
+    }
 }
@@ -8,7 +8,12 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "resources")
+@Table(name = "resources", indexes = {
+        @Index(name = "idx_resources_content_hash", columnList = "content_hash"),
+        @Index(name = "idx_resources_fecha_subida", columnList = "fecha_subida, id"),
+        @Index(name = "idx_resources_extension_fecha", columnList = "extension, fecha_subida, id"),
+        @Index(name = "idx_resources_usuario_fecha", columnList = "usuario_email, fecha_subida, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -42,7 +47,24 @@ public class Resource {
     
     @Column
     private Long tamanioBytes;
+
+    // SHA-256 del contenido; el archivo se guarda como <hash>.<ext> y se comparte entre recursos iguales
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
     
     @Column
     private String descripcion;
+
+    // Extensión del archivo en minúsculas, para filtrar el listado por tipo con el índice
+    @Column(length = 10)
+    private String extension;
+
+    // Estado de la portada; null en recursos anteriores a la generación asíncrona (ya tienen portada)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "thumbnail_status")
+    private ThumbnailStatus thumbnailStatus;
+
+    // Intentos fallidos de generar la portada; el barrido reintenta hasta thumbnail.max-attempts
+    @Column(name = "thumbnail_attempts")
+    private Integer thumbnailAttempts;
 }
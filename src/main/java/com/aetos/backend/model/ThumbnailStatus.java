@@ -0,0 +1,7 @@
+package com.aetos.backend.model;
+
+public enum ThumbnailStatus {
+    PENDING,    // En cola; mientras tanto se sirve una portada genérica
+    READY,      // Portada generada
+    FAILED      // No se pudo generar; se sirve la genérica y el barrido reintenta
+}
@@ -0,0 +1,47 @@
+package com.aetos.backend.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.LocalDateTime;
+
+// Subida por partes en curso; los bytes recibidos viven en un temporal del BlobStore
+@Entity
+@Table(name = "upload_sessions", indexes = @Index(name = "idx_upload_sessions_updated_at", columnList = "updated_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private String usuarioEmail;
+
+    @Column(nullable = false)
+    private String nombre;
+
+    @Column
+    private String descripcion;
+
+    @Column(nullable = false)
+    private String nombreArchivo;
+
+    @Column(nullable = false, length = 10)
+    private String extension;
+
+    @Column(nullable = false)
+    private Long totalBytes;
+
+    // SHA-256 declarado por el cliente (opcional); se verifica al finalizar
+    @Column(length = 64)
+    private String expectedSha256;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
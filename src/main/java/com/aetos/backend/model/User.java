@@ -45,4 +45,8 @@ public class User {
     private boolean emailVerified;
     
     private String photoUrl; // URL de la foto de perfil
+
+    // Se incrementa al cambiar el rol para invalidar los JWT emitidos antes
+    @Column(name = "token_version")
+    private Integer tokenVersion;
 }
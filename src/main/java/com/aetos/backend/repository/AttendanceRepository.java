@@ -2,6 +2,43 @@ package com.aetos.backend.repository;
 
 import com.aetos.backend.model.Attendance;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface AttendanceRepository extends JpaRepository<Attendance, Long> {
+    boolean existsByMeeting_IdAndUser_Id(Long meetingId, Long userId);
+
+    long countByMeeting_Id(Long meetingId);
+
+    List<Attendance> findByMeeting_IdOrderByTimestampAsc(Long meetingId);
+
+    List<Attendance> findByUser_Id(Long userId);
+
+    long countByUser_Id(Long userId);
+
+    @Query("SELECT a.user.id FROM Attendance a WHERE a.meeting.id = :meetingId")
+    List<Long> findUserIdsByMeetingId(@Param("meetingId") Long meetingId);
+
+    // Filas [meetingId, count] para todas las reuniones con al menos una asistencia
+    @Query("SELECT a.meeting.id, COUNT(a) FROM Attendance a GROUP BY a.meeting.id")
+    List<Object[]> countGroupedByMeeting();
+
+    // Filas [meetingId, count] limitadas a las reuniones indicadas
+    @Query("SELECT a.meeting.id, COUNT(a) FROM Attendance a WHERE a.meeting.id IN :meetingIds GROUP BY a.meeting.id")
+    List<Object[]> countGroupedByMeeting(@Param("meetingIds") Collection<Long> meetingIds);
+
+    // Filas [meetingId, timestamp] de las asistencias del usuario en las reuniones indicadas
+    @Query("SELECT a.meeting.id, a.timestamp FROM Attendance a WHERE a.user.id = :userId AND a.meeting.id IN :meetingIds")
+    List<Object[]> findUserAttendanceTimes(@Param("userId") Long userId, @Param("meetingIds") Collection<Long> meetingIds);
+
+    // Filas [userId, count] para todos los usuarios con al menos una asistencia
+    @Query("SELECT a.user.id, COUNT(a) FROM Attendance a GROUP BY a.user.id")
+    List<Object[]> countGroupedByUser();
+
+    // Filas [userId, meetingId] de todas las asistencias (sin cargar entidades)
+    @Query("SELECT a.user.id, a.meeting.id FROM Attendance a")
+    List<Object[]> findAllUserMeetingPairs();
 }
@@ -1,9 +1,44 @@
 package com.aetos.backend.repository;
 
 import com.aetos.backend.model.Meeting;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface MeetingRepository extends JpaRepository<Meeting, Long> {
     Optional<Meeting> findByTokenQrAndActivaTrue(String tokenQr);
+    Optional<Meeting> findFirstByActivaTrueOrderByFechaDesc();
+    List<Meeting> findAllByOrderByFechaDesc();
+    List<Meeting> findTop10ByOrderByFechaDesc();
+
+    // Paginación por keyset (fecha, id) descendente sobre idx_meetings_fecha
+    @Query("SELECT m FROM Meeting m ORDER BY m.fecha DESC, m.id DESC")
+    List<Meeting> findPage(Pageable pageable);
+
+    // Comparación de fila para que la cota sea un rango del índice y no un filtro
+    @Query("SELECT m FROM Meeting m WHERE (m.fecha, m.id) < (:fecha, :id) ORDER BY m.fecha DESC, m.id DESC")
+    List<Meeting> findPageBefore(@Param("fecha") LocalDateTime fecha, @Param("id") Long id, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Meeting m SET m.activa = false WHERE m.activa = true")
+    int deactivateAll();
+
+    // Reunión activa bloqueada hasta el fin de la transacción (apertura concurrente desde varias instancias)
+    @Query(value = "SELECT * FROM meetings WHERE activa FOR UPDATE", nativeQuery = true)
+    Optional<Meeting> lockActive();
+
+    // Solo cierra reuniones de días anteriores: nunca la que otra instancia abrió hoy
+    @Modifying
+    @Query("UPDATE Meeting m SET m.activa = false WHERE m.activa = true AND m.fecha < :desde")
+    int deactivateBefore(@Param("desde") LocalDateTime desde);
+
+    @Modifying
+    @Query("UPDATE Meeting m SET m.tokenQr = :tokenQr, m.actualizadaEn = :actualizadaEn WHERE m.id = :id")
+    int updateTokenQr(@Param("id") Long id, @Param("tokenQr") String tokenQr,
+                      @Param("actualizadaEn") LocalDateTime actualizadaEn);
 }
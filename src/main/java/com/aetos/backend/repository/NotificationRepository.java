@@ -2,11 +2,20 @@ package com.aetos.backend.repository;
 
 import com.aetos.backend.model.Notification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface NotificationRepository extends JpaRepository<Notification, Long> {
     List<Notification> findByIsActiveTrueOrderByCreatedAtDesc();
+
+    // Usuarios que ya recibieron este recordatorio (usa uk_notifications_program_user_kind)
+    @Query("SELECT n.userId FROM Notification n WHERE n.programId = :programId AND n.kind = :kind AND n.userId IN :userIds")
+    List<Long> findNotifiedUserIds(@Param("programId") Long programId,
+                                   @Param("kind") String kind,
+                                   @Param("userIds") Collection<Long> userIds);
 }
@@ -0,0 +1,38 @@
+package com.aetos.backend.repository;
+
+import com.aetos.backend.model.OutboxMessage;
+import com.aetos.backend.model.OutboxStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // Mensajes vencidos de un canal, bloqueados sin esperar a los que ya tomó otra instancia (requiere transacción)
+    @Query(value = "SELECT * FROM outbox_messages WHERE channel = :channel AND status IN ('PENDING', 'SENDING') "
+            + "AND next_attempt_at <= :now ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<OutboxMessage> lockDue(@Param("channel") String channel,
+                                @Param("now") LocalDateTime now,
+                                @Param("limit") int limit);
+
+    // Renueva el plazo solo si el mensaje sigue tomado por quien tiene esta versión
+    @Modifying
+    @Query("UPDATE OutboxMessage m SET m.nextAttemptAt = :until, m.version = m.version + 1 "
+            + "WHERE m.id = :id AND m.version = :version AND m.status = :status")
+    int renewLease(@Param("id") Long id,
+                   @Param("version") Long version,
+                   @Param("status") OutboxStatus status,
+                   @Param("until") LocalDateTime until);
+
+    @Query("SELECT m.status, count(m) FROM OutboxMessage m GROUP BY m.status")
+    List<Object[]> countByStatus();
+
+    @Modifying
+    @Query("DELETE FROM OutboxMessage m WHERE m.status = :status AND m.sentAt < :cutoff")
+    int deleteByStatusAndSentAtBefore(@Param("status") OutboxStatus status, @Param("cutoff") LocalDateTime cutoff);
+}
@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +19,10 @@ public interface ProgramWeeklyRepository extends JpaRepository<ProgramWeekly, Lo
         @Param("startDate") LocalDate startDate,
         @Param("endDate") LocalDate endDate
     );
+
+    // Programas que empiezan en la ventana (usa idx_program_weekly_inicio)
+    List<ProgramWeekly> findByInicioBetweenOrderByInicioAsc(LocalDateTime from, LocalDateTime to);
+
+    // Programas futuros creados antes de existir la columna inicio
+    List<ProgramWeekly> findByInicioIsNullAndWeekStartGreaterThanEqual(LocalDate from);
 }
@@ -0,0 +1,17 @@
+package com.aetos.backend.repository;
+
+import com.aetos.backend.model.ThumbnailStatus;
+import java.time.LocalDateTime;
+
+// Proyección con los campos de la tarjeta de un recurso (sin descripción ni ruta del archivo)
+public interface ResourceCard {
+    Long getId();
+    String getNombre();
+    String getNombreArchivo();
+    String getRutaPortada();
+    String getUsuarioEmail();
+    String getUsuarioNombre();
+    LocalDateTime getFechaSubida();
+    Long getTamanioBytes();
+    ThumbnailStatus getThumbnailStatus();
+}
@@ -1,10 +1,80 @@
 package com.aetos.backend.repository;
 
 import com.aetos.backend.model.Resource;
+import com.aetos.backend.model.ThumbnailStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface ResourceRepository extends JpaRepository<Resource, Long> {
     List<Resource> findAllByOrderByFechaSubidaDesc();
     List<Resource> findByUsuarioEmailOrderByFechaSubidaDesc(String usuarioEmail);
+
+    // Listado por keyset (fechaSubida, id) descendente; las variantes ByType filtran por extensión
+    String CARD_SELECT = "SELECT r.id AS id, r.nombre AS nombre, r.nombreArchivo AS nombreArchivo, "
+            + "r.rutaPortada AS rutaPortada, r.usuarioEmail AS usuarioEmail, r.usuarioNombre AS usuarioNombre, "
+            + "r.fechaSubida AS fechaSubida, r.tamanioBytes AS tamanioBytes, r.thumbnailStatus AS thumbnailStatus "
+            + "FROM Resource r ";
+    // Comparación de fila: Postgres la usa como cota del índice (fecha_subida, id) en vez de filtrar desde el inicio
+    String BEFORE = "(r.fechaSubida, r.id) < (:fecha, :id) ";
+    String NEWEST_FIRST = "ORDER BY r.fechaSubida DESC, r.id DESC";
+
+    @Query(CARD_SELECT + NEWEST_FIRST)
+    List<ResourceCard> findCards(Pageable pageable);
+
+    @Query(CARD_SELECT + "WHERE " + BEFORE + NEWEST_FIRST)
+    List<ResourceCard> findCardsBefore(@Param("fecha") LocalDateTime fecha, @Param("id") Long id, Pageable pageable);
+
+    @Query(CARD_SELECT + "WHERE r.extension = :ext " + NEWEST_FIRST)
+    List<ResourceCard> findCardsByType(@Param("ext") String ext, Pageable pageable);
+
+    @Query(CARD_SELECT + "WHERE r.extension = :ext AND " + BEFORE + NEWEST_FIRST)
+    List<ResourceCard> findCardsByTypeBefore(@Param("ext") String ext, @Param("fecha") LocalDateTime fecha,
+                                             @Param("id") Long id, Pageable pageable);
+
+    @Query(CARD_SELECT + "WHERE r.usuarioEmail = :email " + NEWEST_FIRST)
+    List<ResourceCard> findCardsByUser(@Param("email") String email, Pageable pageable);
+
+    @Query(CARD_SELECT + "WHERE r.usuarioEmail = :email AND " + BEFORE + NEWEST_FIRST)
+    List<ResourceCard> findCardsByUserBefore(@Param("email") String email, @Param("fecha") LocalDateTime fecha,
+                                             @Param("id") Long id, Pageable pageable);
+
+    @Query(CARD_SELECT + "WHERE r.usuarioEmail = :email AND r.extension = :ext " + NEWEST_FIRST)
+    List<ResourceCard> findCardsByUserAndType(@Param("email") String email, @Param("ext") String ext, Pageable pageable);
+
+    @Query(CARD_SELECT + "WHERE r.usuarioEmail = :email AND r.extension = :ext AND " + BEFORE + NEWEST_FIRST)
+    List<ResourceCard> findCardsByUserAndTypeBefore(@Param("email") String email, @Param("ext") String ext,
+                                                    @Param("fecha") LocalDateTime fecha, @Param("id") Long id,
+                                                    Pageable pageable);
+
+    List<Resource> findTop50ByThumbnailStatusOrderByIdAsc(ThumbnailStatus thumbnailStatus);
+
+    // Portadas fallidas que aún no agotaron sus reintentos
+    @Query("SELECT r FROM Resource r WHERE r.thumbnailStatus = :status "
+            + "AND COALESCE(r.thumbnailAttempts, 0) < :maxAttempts ORDER BY r.id ASC")
+    List<Resource> findThumbnailRetries(@Param("status") ThumbnailStatus status,
+                                        @Param("maxAttempts") int maxAttempts, Pageable pageable);
+
+    // Recurso con el mismo contenido cuya portada ya está generada
+    Optional<Resource> findFirstByContentHashAndThumbnailStatus(String contentHash, ThumbnailStatus thumbnailStatus);
+
+    // Referencias a un blob / portada (conteo de referencias para borrar el archivo)
+    long countByRutaArchivo(String rutaArchivo);
+
+    long countByRutaPortada(String rutaPortada);
+
+    // Solo actualiza el estado, sin pisar ediciones concurrentes del recurso
+    @Modifying
+    @Query("UPDATE Resource r SET r.thumbnailStatus = :status WHERE r.id = :id")
+    int updateThumbnailStatus(@Param("id") Long id, @Param("status") ThumbnailStatus status);
+
+    @Modifying
+    @Query("UPDATE Resource r SET r.thumbnailStatus = :status, "
+            + "r.thumbnailAttempts = COALESCE(r.thumbnailAttempts, 0) + 1 WHERE r.id = :id")
+    int recordThumbnailFailure(@Param("id") Long id, @Param("status") ThumbnailStatus status);
 }
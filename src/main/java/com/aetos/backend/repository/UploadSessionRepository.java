@@ -0,0 +1,11 @@
+package com.aetos.backend.repository;
+
+import com.aetos.backend.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    // Sesiones abandonadas (sin partes recibidas desde la fecha indicada)
+    List<UploadSession> findTop100ByUpdatedAtBefore(LocalDateTime cutoff);
+}
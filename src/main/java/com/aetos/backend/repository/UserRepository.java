@@ -2,9 +2,22 @@ package com.aetos.backend.repository;
 
 import com.aetos.backend.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     Optional<User> findByEmailIgnoreCase(String email);
+
+    // Usuarios que comparten una foto (las fotos se guardan por contenido)
+    long countByPhotoUrl(String photoUrl);
+
+    // Responsables de programas: se guardan como "Nombre Apellidos", nombre o email (claves en minúsculas)
+    @Query("SELECT u FROM User u WHERE lower(trim(concat(u.nombre, ' ', u.apellidos))) IN :keys "
+            + "OR lower(trim(u.nombre)) IN :keys OR lower(trim(u.email)) IN :keys ORDER BY u.id")
+    List<User> findByResponsableKeys(@Param("keys") Collection<String> keys);
 }
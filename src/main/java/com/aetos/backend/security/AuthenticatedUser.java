@@ -0,0 +1,7 @@
+package com.aetos.backend.security;
+
+/**
+ * Datos del usuario extraídos del JWT; se guardan como details de la Authentication.
+ */
+public record AuthenticatedUser(Long id, String fullName) {
+}
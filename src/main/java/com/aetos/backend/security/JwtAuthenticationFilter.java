@@ -1,6 +1,7 @@
 package com.aetos.backend.security;
 
 import com.aetos.backend.repository.UserRepository;
+import io.jsonwebtoken.Claims;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,37 +21,54 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserRepository userRepository;
+    private final TokenVersionRegistry tokenVersionRegistry;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserRepository userRepository) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserRepository userRepository, TokenVersionRegistry tokenVersionRegistry) {
         this.jwtUtil = jwtUtil;
         this.userRepository = userRepository;
+        this.tokenVersionRegistry = tokenVersionRegistry;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        String requestPath = request.getRequestURI();
         String header = request.getHeader(HttpHeaders.AUTHORIZATION);
-        
-        System.out.println("🔐 JWT Filter - Path: " + requestPath + " | Auth header: " + (header != null ? "Present" : "Missing"));
-        
+
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7);
-            System.out.println("🎫 Token detectado: " + token.substring(0, Math.min(20, token.length())) + "...");
-            if (jwtUtil.validateToken(token)) {
-                String email = jwtUtil.getSubject(token);
-                System.out.println("✅ Token válido para: " + email);
+            Claims claims = jwtUtil.parseClaims(token);
+            if (claims == null) {
+                System.err.println("❌ Token inválido! Path: " + request.getRequestURI());
+            } else if (claims.get(JwtUtil.CLAIM_ROLE) != null) {
+                authenticateFromClaims(claims);
+            } else {
+                // Tokens emitidos antes de incluir el rol: se resuelven contra la BD hasta que expiren
+                String email = claims.getSubject();
                 userRepository.findByEmail(email).ifPresent(user -> {
                     var auth = new UsernamePasswordAuthenticationToken(
                             user.getEmail(), null, List.of(new SimpleGrantedAuthority(user.getRol().name())));
+                    auth.setDetails(new AuthenticatedUser(user.getId(), user.getNombre() + " " + user.getApellidos()));
                     SecurityContextHolder.getContext().setAuthentication(auth);
-                    System.out.println("🔓 Autenticación establecida para: " + email + " con rol: " + user.getRol());
                 });
-            } else {
-                System.err.println("❌ Token inválido!");
             }
-        } else {
-            System.out.println("⚠️ No hay token de autenticación");
         }
         filterChain.doFilter(request, response);
     }
+
+    private void authenticateFromClaims(Claims claims) {
+        Object uidClaim = claims.get(JwtUtil.CLAIM_USER_ID);
+        Object verClaim = claims.get(JwtUtil.CLAIM_VERSION);
+        if (!(uidClaim instanceof Number) || !(verClaim instanceof Number)) {
+            return;
+        }
+        Long userId = ((Number) uidClaim).longValue();
+        if (!tokenVersionRegistry.isCurrent(userId, ((Number) verClaim).intValue())) {
+            System.out.println("⛔ Token revocado para usuario " + userId);
+            return;
+        }
+        String role = claims.get(JwtUtil.CLAIM_ROLE, String.class);
+        var auth = new UsernamePasswordAuthenticationToken(
+                claims.getSubject(), null, List.of(new SimpleGrantedAuthority(role)));
+        auth.setDetails(new AuthenticatedUser(userId, claims.get(JwtUtil.CLAIM_NAME, String.class)));
+        SecurityContextHolder.getContext().setAuthentication(auth);
+    }
 }
@@ -61,9 +61,9 @@ public class SecurityConfig {
         "http://localhost:4200" // Para pruebas locales
         ));
         config.addAllowedOriginPattern("*");
-        config.setAllowedMethods(java.util.List.of("GET","POST","PUT","PATCH","DELETE","OPTIONS"));
+        config.setAllowedMethods(java.util.List.of("GET","HEAD","POST","PUT","PATCH","DELETE","OPTIONS"));
         config.setAllowedHeaders(java.util.List.of("*"));
-        config.setExposedHeaders(java.util.List.of("Authorization","Content-Disposition"));
+        config.setExposedHeaders(java.util.List.of("Authorization","Content-Disposition","Upload-Offset"));
         config.setAllowCredentials(true);
         var source = new org.springframework.web.cors.UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", config);
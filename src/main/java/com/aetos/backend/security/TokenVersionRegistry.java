@@ -0,0 +1,58 @@
+package com.aetos.backend.security;
+
+import com.aetos.backend.model.User;
+import com.aetos.backend.repository.UserRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache en memoria de la versión de token vigente por usuario.
+ *
+ * Un JWT solo es aceptado si su claim "ver" coincide con la versión actual del
+ * usuario. Las entradas caducan a los 5 minutos para que un cambio hecho en
+ * otra instancia también se aplique aquí sin consultar la BD en cada request.
+ */
+@Component
+public class TokenVersionRegistry {
+
+    private static final long TTL_MS = 5 * 60 * 1000;
+    private static final int DELETED = -1;
+
+    private final UserRepository userRepository;
+    private final ConcurrentHashMap<Long, CachedVersion> versions = new ConcurrentHashMap<>();
+
+    private record CachedVersion(int version, long loadedAt) {}
+
+    public TokenVersionRegistry(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public static int versionOf(User user) {
+        return user.getTokenVersion() != null ? user.getTokenVersion() : 0;
+    }
+
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        long now = System.currentTimeMillis();
+        CachedVersion cached = versions.get(userId);
+        if (cached == null || now - cached.loadedAt() > TTL_MS) {
+            int current = userRepository.findById(userId).map(TokenVersionRegistry::versionOf).orElse(DELETED);
+            cached = new CachedVersion(current, now);
+            versions.put(userId, cached);
+        }
+        return cached.version() == tokenVersion;
+    }
+
+    // Invalida los tokens emitidos hasta ahora y guarda el usuario
+    public User bumpAndSave(User user) {
+        int next = versionOf(user) + 1;
+        user.setTokenVersion(next);
+        User saved = userRepository.save(user);
+        versions.put(saved.getId(), new CachedVersion(next, System.currentTimeMillis()));
+        return saved;
+    }
+
+    public void forget(Long userId) {
+        versions.put(userId, new CachedVersion(DELETED, System.currentTimeMillis()));
+    }
+}
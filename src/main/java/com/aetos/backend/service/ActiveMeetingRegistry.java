@@ -0,0 +1,232 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.event.ActiveMeetingChangedEvent;
+import com.aetos.backend.event.MeetingCreatedEvent;
+import com.aetos.backend.model.Meeting;
+import com.aetos.backend.repository.MeetingRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Registro de la única reunión activa.
+ *
+ * La base de datos garantiza con un índice único parcial que solo exista una
+ * fila con activa = true; en memoria se guarda una referencia inmutable que se
+ * reemplaza atómicamente al abrir una reunión o regenerar su QR, de modo que
+ * consultar la reunión actual o validar un token QR no toca la base de datos.
+ * Cada cambio publica un ActiveMeetingChangedEvent. La versión que usa el
+ * long-poll se deriva del estado guardado (id de la reunión activa y su
+ * actualizada_en), así todas las instancias dan la misma versión para el mismo
+ * estado y un cliente puede reenviar su "since" a cualquiera de ellas.
+ */
+@Service
+public class ActiveMeetingRegistry {
+
+    private final MeetingRepository meetingRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicReference<Meeting> active = new AtomicReference<>();
+    private final Object writeLock = new Object();
+
+    public ActiveMeetingRegistry(MeetingRepository meetingRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 ApplicationEventPublisher eventPublisher) {
+        this.meetingRepository = meetingRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    void init() {
+        try {
+            // Reparar duplicados heredados (se conserva la más reciente) y crear el índice único parcial
+            int repaired = jdbcTemplate.update(
+                    "UPDATE meetings SET activa = false WHERE activa = true AND id <> " +
+                    "(SELECT id FROM meetings WHERE activa = true ORDER BY fecha DESC, id DESC LIMIT 1)");
+            if (repaired > 0) {
+                System.out.println("🧹 Reuniones activas duplicadas desactivadas: " + repaired);
+            }
+            jdbcTemplate.execute(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS ux_meetings_single_active ON meetings (activa) WHERE activa");
+        } catch (Exception e) {
+            System.err.println("⚠️ No se pudo crear el índice de reunión activa: " + e.getMessage());
+        }
+        refresh();
+    }
+
+    // Sincroniza la referencia con la BD por si otra instancia abrió o cambió la reunión
+    @Scheduled(initialDelay = 30000, fixedDelay = 30000)
+    public void refresh() {
+        Meeting fromDb = meetingRepository.findFirstByActivaTrueOrderByFechaDesc().orElse(null);
+        replace(fromDb != null ? snapshotOf(fromDb, fromDb.getTokenQr()) : null);
+    }
+
+    // Versión del estado de la reunión activa; cambia con cada apertura, cierre o nuevo QR
+    public long version() {
+        return versionOf(active.get());
+    }
+
+    public Optional<Meeting> current() {
+        return Optional.ofNullable(active.get());
+    }
+
+    // Reunión activa solo si fue creada hoy
+    public Optional<Meeting> currentForToday() {
+        Meeting m = active.get();
+        return (m != null && m.getFecha().toLocalDate().equals(LocalDate.now())) ? Optional.of(m) : Optional.empty();
+    }
+
+    // Valida el token QR contra la reunión activa en memoria
+    public Optional<Meeting> matchToken(String tokenQr) {
+        Meeting m = active.get();
+        if (m != null && tokenEquals(m.getTokenQr(), tokenQr)) {
+            return Optional.of(m);
+        }
+        // Otra instancia pudo haber regenerado el QR: una consulta indexada antes de rechazar
+        Meeting fromDb = meetingRepository.findByTokenQrAndActivaTrue(tokenQr).orElse(null);
+        if (fromDb == null) return Optional.empty();
+        Meeting snapshot = snapshotOf(fromDb, fromDb.getTokenQr());
+        replace(snapshot);
+        return Optional.of(snapshot);
+    }
+
+    // Desactiva la reunión activa si es de un día anterior
+    public void closeStale() {
+        synchronized (writeLock) {
+            Meeting m = active.get();
+            if (m == null || m.getFecha().toLocalDate().equals(LocalDate.now())) return;
+            transactionTemplate.executeWithoutResult(status ->
+                    meetingRepository.deactivateBefore(LocalDate.now().atStartOfDay()));
+            if (active.compareAndSet(m, null)) {
+                changed(null);
+            }
+            System.out.println("🗓️ Reunión " + m.getId() + " de un día anterior desactivada");
+        }
+    }
+
+    /**
+     * Abre una nueva reunión desactivando las de días anteriores en la misma
+     * transacción. La reunión activa se lee con FOR UPDATE: si otro líder (u
+     * otra instancia, cuya apertura aún no llegó a esta caché) abrió una hoy,
+     * se devuelve esa en vez de cerrarla.
+     */
+    public Meeting open() {
+        synchronized (writeLock) {
+            Optional<Meeting> today = currentForToday();
+            if (today.isPresent()) return today.get();
+
+            Opened opened;
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            try {
+                opened = transactionTemplate.execute(status -> {
+                    Meeting current = meetingRepository.lockActive().orElse(null);
+                    if (current != null && current.getFecha().toLocalDate().equals(now.toLocalDate())) {
+                        return new Opened(current, false);
+                    }
+                    meetingRepository.deactivateBefore(now.toLocalDate().atStartOfDay());
+                    return new Opened(meetingRepository.save(Meeting.builder()
+                            .fecha(now)
+                            .tokenQr(UUID.randomUUID().toString())
+                            .activa(true)
+                            .actualizadaEn(now)
+                            .build()), true);
+                });
+            } catch (DataIntegrityViolationException e) {
+                // El índice único parcial rechazó la inserción: otra instancia ganó la carrera
+                refresh();
+                Meeting winner = active.get();
+                if (winner == null) throw e;
+                return winner;
+            }
+
+            Meeting snapshot = snapshotOf(opened.meeting(), opened.meeting().getTokenQr());
+            replace(snapshot);
+            if (opened.created()) {
+                eventPublisher.publishEvent(new MeetingCreatedEvent(snapshot.getId(), snapshot.getFecha()));
+            }
+            return snapshot;
+        }
+    }
+
+    private record Opened(Meeting meeting, boolean created) {}
+
+    // Regenera el token QR de la reunión activa; vacío si no hay reunión activa
+    public Optional<Meeting> regenerateToken() {
+        synchronized (writeLock) {
+            Meeting m = active.get();
+            if (m == null) return Optional.empty();
+            String token = UUID.randomUUID().toString();
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            transactionTemplate.executeWithoutResult(status -> meetingRepository.updateTokenQr(m.getId(), token, now));
+            Meeting snapshot = snapshotOf(m, token);
+            snapshot.setActualizadaEn(now);
+            replace(snapshot);
+            return Optional.of(snapshot);
+        }
+    }
+
+    // Sustituye la referencia y notifica solo si cambió la reunión, su token o su versión
+    private void replace(Meeting next) {
+        Meeting previous = active.getAndSet(next);
+        boolean same = versionOf(previous) == versionOf(next)
+                && Objects.equals(previous != null ? previous.getTokenQr() : null, next != null ? next.getTokenQr() : null);
+        if (!same) {
+            changed(next);
+        }
+    }
+
+    private void changed(Meeting next) {
+        eventPublisher.publishEvent(new ActiveMeetingChangedEvent(next != null ? next.getId() : null, versionOf(next)));
+    }
+
+    /**
+     * Versión opaca del estado: 0 sin reunión activa; si no, los milisegundos
+     * de actualizada_en (o de la fecha en reuniones anteriores a la columna)
+     * por 1000 más los 3 dígitos bajos del id, para que dos reuniones abiertas
+     * en el mismo milisegundo no compartan versión. Se mantiene por debajo de
+     * 2^53 (~1.7e15 hoy) para que el navegador la lea como número exacto y
+     * devuelva el mismo "since". Solo se compara por igualdad.
+     */
+    private static long versionOf(Meeting m) {
+        if (m == null) return 0;
+        LocalDateTime updated = m.getActualizadaEn() != null ? m.getActualizadaEn() : m.getFecha();
+        long millis = updated.truncatedTo(ChronoUnit.MILLIS).toInstant(ZoneOffset.UTC).toEpochMilli();
+        return millis * 1000 + Math.floorMod(m.getId(), 1000L);
+    }
+
+    // Copia propia para que nadie mute la instancia compartida entre hilos
+    private static Meeting snapshotOf(Meeting m, String tokenQr) {
+        return Meeting.builder()
+                .id(m.getId())
+                .fecha(m.getFecha())
+                .tokenQr(tokenQr)
+                .activa(true)
+                .actualizadaEn(m.getActualizadaEn())
+                .build();
+    }
+
+    private static boolean tokenEquals(String expected, String provided) {
+        if (expected == null || provided == null) return false;
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), provided.getBytes(StandardCharsets.UTF_8));
+    }
+}
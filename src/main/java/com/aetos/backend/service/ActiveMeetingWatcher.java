@@ -0,0 +1,114 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.event.ActiveMeetingChangedEvent;
+import com.aetos.backend.model.Meeting;
+import com.aetos.backend.repository.AttendanceRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Long-poll del estado de la reunión activa para los miembros.
+ *
+ * La request queda estacionada en un DeferredResult (sin ocupar hilo del
+ * servidor) hasta que ActiveMeetingRegistry publica un cambio o vence el
+ * timeout. Con un cambio se responde el estado completo y su versión, que el
+ * cliente reenvía como "since" en la siguiente espera. Si vence el timeout sin
+ * cambios se responde solo {@code {version, changed: false}}, sin consultar la
+ * BD, y el cliente conserva el último estado que recibió.
+ */
+@Service
+public class ActiveMeetingWatcher {
+
+    public static final long WAIT_TIMEOUT_MS = 25000;
+
+    private record Waiter(Long userId, DeferredResult<ResponseEntity<?>> result) {}
+
+    private final ActiveMeetingRegistry activeMeetingRegistry;
+    private final AttendanceRepository attendanceRepository;
+
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+
+    public ActiveMeetingWatcher(ActiveMeetingRegistry activeMeetingRegistry,
+                                AttendanceRepository attendanceRepository) {
+        this.activeMeetingRegistry = activeMeetingRegistry;
+        this.attendanceRepository = attendanceRepository;
+    }
+
+    public DeferredResult<ResponseEntity<?>> await(Long userId, Long since) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(WAIT_TIMEOUT_MS);
+        if (since == null || since != activeMeetingRegistry.version()) {
+            result.setResult(ResponseEntity.ok(statusFor(userId)));
+            return result;
+        }
+
+        Waiter waiter = new Waiter(userId, result);
+        result.onTimeout(() -> result.setResult(ResponseEntity.ok(since == activeMeetingRegistry.version()
+                ? Map.of("version", since, "changed", false)
+                : statusFor(userId))));
+        result.onCompletion(() -> waiters.remove(waiter));
+        waiters.add(waiter);
+
+        // El cambio pudo llegar entre la comprobación y el registro
+        if (since != activeMeetingRegistry.version()) {
+            result.setResult(ResponseEntity.ok(statusFor(userId)));
+        }
+        return result;
+    }
+
+    @EventListener
+    public void onActiveMeetingChanged(ActiveMeetingChangedEvent event) {
+        if (waiters.isEmpty()) return;
+        // Una sola consulta para todos los miembros en espera
+        Set<Long> attended = event.meetingId() != null
+                ? new HashSet<>(attendanceRepository.findUserIdsByMeetingId(event.meetingId()))
+                : Set.of();
+        for (Waiter waiter : waiters) {
+            waiter.result().setResult(ResponseEntity.ok(buildStatus(waiter.userId(), attended::contains)));
+        }
+    }
+
+    // Estado de la reunión activa para un usuario (también lo usa el endpoint sin espera)
+    public Map<String, Object> statusFor(Long userId) {
+        Meeting meeting = activeMeetingRegistry.current().orElse(null);
+        return buildStatus(userId, id -> meeting != null
+                && attendanceRepository.existsByMeeting_IdAndUser_Id(meeting.getId(), id));
+    }
+
+    private Map<String, Object> buildStatus(Long userId, Predicate<Long> hasAttended) {
+        long version = activeMeetingRegistry.version();
+        Meeting meeting = activeMeetingRegistry.current().orElse(null);
+        Map<String, Object> status = new HashMap<>();
+        status.put("version", version);
+        status.put("changed", true);
+        if (meeting == null) {
+            status.put("hasActiveMeeting", false);
+            return status;
+        }
+
+        // Expiration by TTL (meeting creation time + 120 minutes)
+        LocalDateTime ttl = meeting.getFecha().plusMinutes(120);
+        if (LocalDateTime.now().isAfter(ttl)) {
+            status.put("hasActiveMeeting", false);
+            status.put("expired", true);
+            return status;
+        }
+
+        status.put("hasActiveMeeting", true);
+        status.put("hasAttended", hasAttended.test(userId));
+        status.put("meetingId", meeting.getId());
+        status.put("meetingDate", meeting.getFecha().toString());
+        status.put("expiresAt", ttl.toString());
+        status.put("tokenQr", meeting.getTokenQr());
+        return status;
+    }
+}
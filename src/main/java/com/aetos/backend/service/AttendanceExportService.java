@@ -0,0 +1,135 @@
+package com.aetos.backend.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Exportación de reportes de asistencia en CSV o XLSX.
+ *
+ * Las filas se leen con un cursor JDBC (fetch size acotado dentro de una
+ * transacción de solo lectura, requisito de PostgreSQL para no traer todo el
+ * resultado) y se escriben al vuelo en el TabularWriter, sin armar listas ni
+ * mapas intermedios.
+ */
+@Service
+public class AttendanceExportService {
+
+    public enum Format { CSV, XLSX }
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String USERS_SQL =
+            "SELECT id, nombre, apellidos, email, celular, rol FROM users ORDER BY apellidos, nombre, id";
+
+    private static final String MEETINGS_SQL =
+            "SELECT m.id, m.fecha, m.activa, COUNT(a.id) AS asistentes " +
+            "FROM meetings m LEFT JOIN attendances a ON a.meeting_id = m.id " +
+            "GROUP BY m.id, m.fecha, m.activa ORDER BY m.fecha DESC";
+
+    private static final String ATTENDANCES_SQL =
+            "SELECT m.id AS meeting_id, m.fecha, u.nombre, u.apellidos, u.email, a.timestamp, a.marked_manually " +
+            "FROM attendances a JOIN meetings m ON m.id = a.meeting_id JOIN users u ON u.id = a.user_id " +
+            "ORDER BY m.fecha DESC, a.timestamp";
+
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate readOnlyTx;
+    private final AttendanceMatrix attendanceMatrix;
+
+    public AttendanceExportService(DataSource dataSource,
+                                   TransactionTemplate transactionTemplate,
+                                   AttendanceMatrix attendanceMatrix) {
+        this.cursorTemplate = new JdbcTemplate(dataSource);
+        this.cursorTemplate.setFetchSize(FETCH_SIZE);
+        this.readOnlyTx = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTx.setReadOnly(true);
+        this.attendanceMatrix = attendanceMatrix;
+    }
+
+    public static Format parseFormat(String format) {
+        return "xlsx".equalsIgnoreCase(format) ? Format.XLSX : Format.CSV;
+    }
+
+    // Una fila por usuario con sus totales, calculados desde la matriz de asistencia
+    public void writeAttendanceReport(Format format, OutputStream out) throws IOException {
+        var matrix = attendanceMatrix.report(2);
+        long totalMeetings = matrix.totalMeetings();
+        try (TabularWriter writer = open(format, out, "Reporte")) {
+            writer.row("ID", "Nombre", "Apellidos", "Email", "Teléfono", "Rol",
+                    "Reuniones", "Asistencias", "Faltas", "% Asistencia", "Faltó últimas 2");
+            stream(USERS_SQL, rs -> {
+                long userId = rs.getLong("id");
+                long attended = matrix.attended(userId);
+                row(writer,
+                        userId,
+                        rs.getString("nombre"),
+                        rs.getString("apellidos"),
+                        rs.getString("email"),
+                        rs.getString("celular"),
+                        rs.getString("rol"),
+                        totalMeetings,
+                        attended,
+                        totalMeetings - attended,
+                        totalMeetings > 0 ? attended * 100 / totalMeetings : 0,
+                        matrix.missedLast(userId, 2));
+            });
+        }
+    }
+
+    // Una fila por reunión (como /leader/meetings/history) o, con detalle, una por asistencia
+    public void writeMeetingHistory(Format format, boolean detail, OutputStream out) throws IOException {
+        try (TabularWriter writer = open(format, out, "Historial")) {
+            if (detail) {
+                writer.row("Reunión", "Fecha", "Nombre", "Apellidos", "Email", "Hora de marcación", "Manual");
+                stream(ATTENDANCES_SQL, rs -> row(writer,
+                        rs.getLong("meeting_id"),
+                        format(rs.getTimestamp("fecha")),
+                        rs.getString("nombre"),
+                        rs.getString("apellidos"),
+                        rs.getString("email"),
+                        format(rs.getTimestamp("timestamp")),
+                        rs.getBoolean("marked_manually")));
+            } else {
+                writer.row("Reunión", "Fecha", "Activa", "Asistentes");
+                stream(MEETINGS_SQL, rs -> row(writer,
+                        rs.getLong("id"),
+                        format(rs.getTimestamp("fecha")),
+                        rs.getBoolean("activa"),
+                        rs.getLong("asistentes")));
+            }
+        }
+    }
+
+    private static TabularWriter open(Format format, OutputStream out, String sheetName) throws IOException {
+        return format == Format.XLSX ? TabularWriter.xlsx(out, sheetName) : TabularWriter.csv(out);
+    }
+
+    private void stream(String sql, RowCallbackHandler handler) throws IOException {
+        try {
+            readOnlyTx.executeWithoutResult(status -> cursorTemplate.query(sql, handler));
+        } catch (UncheckedIOException e) {
+            // El cliente cortó la descarga
+            throw e.getCause();
+        }
+    }
+
+    private static void row(TabularWriter writer, Object... cells) throws SQLException {
+        try {
+            writer.row(cells);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String format(Timestamp ts) {
+        return ts != null ? ts.toLocalDateTime().toString() : null;
+    }
+}
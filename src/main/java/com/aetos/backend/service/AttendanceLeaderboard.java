@@ -0,0 +1,197 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.event.AttendanceRecordedEvent;
+import com.aetos.backend.event.MeetingCreatedEvent;
+import com.aetos.backend.model.Role;
+import com.aetos.backend.model.User;
+import com.aetos.backend.repository.AttendanceRepository;
+import com.aetos.backend.repository.MeetingRepository;
+import com.aetos.backend.repository.UserRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ranking de asistencia mantenido en memoria.
+ *
+ * Los contadores por usuario y el total de reuniones se actualizan de forma
+ * incremental con los eventos de asistencia y de creación de reuniones; el
+ * ranking ordenado se sirve desde un snapshot que solo se recalcula cuando
+ * cambió algún contador. Cada 10 minutos se reconcilia contra la base de datos
+ * para recoger usuarios nuevos o cambios de rol.
+ *
+ * La recarga lee todo en una transacción REPEATABLE READ. Los eventos que
+ * llegan mientras tanto se anotan, y antes de publicar el mapa nuevo se suman
+ * solo los que esa foto de la base de datos no incluye, así no se pierde ni
+ * se cuenta dos veces una asistencia registrada durante la recarga.
+ */
+@Service
+public class AttendanceLeaderboard {
+
+    private final UserRepository userRepository;
+    private final MeetingRepository meetingRepository;
+    private final AttendanceRepository attendanceRepository;
+    private final TransactionTemplate snapshotTransaction;
+
+    // Distingue ETags entre reinicios del proceso
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+
+    private volatile Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalMeetings = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    // Eventos recibidos durante una recarga en curso (null si no hay recarga); se accede bajo reloadLock
+    private List<Object> duringReload;
+    private final Object reloadLock = new Object();
+
+    public record Snapshot(long version, String etag, List<Map<String, Object>> ranking) {}
+
+    private static final class Entry {
+        final String userName;
+        final Role role;
+        final AtomicLong attended;
+
+        Entry(String userName, Role role, long attended) {
+            this.userName = userName;
+            this.role = role;
+            this.attended = new AtomicLong(attended);
+        }
+    }
+
+    public AttendanceLeaderboard(UserRepository userRepository,
+                                 MeetingRepository meetingRepository,
+                                 AttendanceRepository attendanceRepository,
+                                 PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.meetingRepository = meetingRepository;
+        this.attendanceRepository = attendanceRepository;
+        this.snapshotTransaction = new TransactionTemplate(transactionManager);
+        this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        reload();
+    }
+
+    // Reconciliación periódica con la base de datos
+    @Scheduled(initialDelay = 600000, fixedDelay = 600000)
+    public void reload() {
+        synchronized (reloadLock) {
+            duringReload = new ArrayList<>();
+        }
+        try {
+            snapshotTransaction.executeWithoutResult(status -> rebuild());
+        } finally {
+            synchronized (reloadLock) {
+                duringReload = null;
+            }
+        }
+    }
+
+    // Corre dentro de la transacción REPEATABLE READ: todas las consultas ven la misma foto
+    private void rebuild() {
+        Map<Long, Long> attendedByUser = new HashMap<>();
+        for (Object[] row : attendanceRepository.countGroupedByUser()) {
+            attendedByUser.put((Long) row[0], ((Number) row[1]).longValue());
+        }
+
+        Map<Long, Entry> fresh = new ConcurrentHashMap<>();
+        for (User user : userRepository.findAll()) {
+            fresh.put(user.getId(), new Entry(
+                    user.getNombre() + " " + user.getApellidos(),
+                    user.getRol(),
+                    attendedByUser.getOrDefault(user.getId(), 0L)));
+        }
+        long meetings = meetingRepository.count();
+
+        synchronized (reloadLock) {
+            // Se suman los eventos de la recarga cuya fila no entró en la foto
+            Map<Long, Set<Long>> attendeesByMeeting = new HashMap<>();
+            for (Object event : duringReload) {
+                if (event instanceof AttendanceRecordedEvent a) {
+                    Set<Long> attendees = attendeesByMeeting.computeIfAbsent(a.meetingId(),
+                            id -> new HashSet<>(attendanceRepository.findUserIdsByMeetingId(id)));
+                    if (!attendees.contains(a.userId())) {
+                        increment(fresh, a);
+                    }
+                } else if (event instanceof MeetingCreatedEvent m && !meetingRepository.existsById(m.meetingId())) {
+                    meetings++;
+                }
+            }
+            entries = fresh;
+            totalMeetings.set(meetings);
+            version.incrementAndGet();
+        }
+        System.out.println("🏆 Ranking recargado: " + fresh.size() + " usuarios, " + meetings + " reuniones");
+    }
+
+    @EventListener
+    public void onAttendanceRecorded(AttendanceRecordedEvent event) {
+        synchronized (reloadLock) {
+            increment(entries, event);
+            if (duringReload != null) duringReload.add(event);
+        }
+        version.incrementAndGet();
+    }
+
+    @EventListener
+    public void onMeetingCreated(MeetingCreatedEvent event) {
+        synchronized (reloadLock) {
+            totalMeetings.incrementAndGet();
+            if (duringReload != null) duringReload.add(event);
+        }
+        version.incrementAndGet();
+    }
+
+    private static void increment(Map<Long, Entry> target, AttendanceRecordedEvent event) {
+        Entry entry = target.computeIfAbsent(event.userId(),
+                id -> new Entry(event.userName(), event.role(), 0));
+        entry.attended.incrementAndGet();
+    }
+
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        long v = version.get();
+        if (current != null && current.version() == v) {
+            return current;
+        }
+
+        long total = totalMeetings.get();
+        List<Map<String, Object>> ranking = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.role != Role.MIEMBRO) continue;
+            long attended = entry.attended.get();
+            int percentage = total > 0 ? (int) ((attended * 100) / total) : 0;
+            ranking.add(Map.of(
+                    "userName", entry.userName,
+                    "attended", attended,
+                    "total", total,
+                    "percentage", percentage
+            ));
+        }
+        ranking.sort(Comparator.comparing((Map<String, Object> m) -> (int) m.get("percentage")).reversed()
+                .thenComparing(m -> (String) m.get("userName")));
+
+        Snapshot fresh = new Snapshot(v, "\"rk-" + epoch + "-" + v + "\"", List.copyOf(ranking));
+        snapshot = fresh;
+        return fresh;
+    }
+}
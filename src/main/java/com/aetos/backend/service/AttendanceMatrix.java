@@ -0,0 +1,226 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.event.AttendanceRecordedEvent;
+import com.aetos.backend.event.MeetingCreatedEvent;
+import com.aetos.backend.model.Meeting;
+import com.aetos.backend.repository.AttendanceRepository;
+import com.aetos.backend.repository.MeetingRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Matriz usuario × reunión de asistencias en memoria.
+ *
+ * Los ids de usuario y de reunión se mapean a índices densos; cada reunión
+ * guarda un BitSet con los índices de los usuarios que asistieron y cada
+ * usuario un contador de asistencias. La matriz se construye de forma perezosa
+ * en el primer acceso, se actualiza con los eventos de asistencia y de nueva
+ * reunión, y cada 10 minutos se marca como obsoleta para reconstruirse contra
+ * la base de datos en el siguiente acceso.
+ */
+@Service
+public class AttendanceMatrix {
+
+    public record MeetingRef(Long id, LocalDateTime fecha) {}
+
+    private final MeetingRepository meetingRepository;
+    private final AttendanceRepository attendanceRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Estado protegido por lock; reuniones en orden cronológico
+    private final Map<Long, Integer> userIndex = new HashMap<>();
+    private final Map<Long, Integer> meetingIndex = new HashMap<>();
+    private final List<MeetingRef> meetings = new ArrayList<>();
+    private final List<BitSet> attendedBy = new ArrayList<>();
+    private int[] attendedCount = new int[0];
+
+    private volatile boolean stale = true;
+
+    public AttendanceMatrix(MeetingRepository meetingRepository, AttendanceRepository attendanceRepository) {
+        this.meetingRepository = meetingRepository;
+        this.attendanceRepository = attendanceRepository;
+    }
+
+    /**
+     * Vista inmutable para armar un reporte: copia los contadores y los BitSet
+     * de las últimas {@code recentCount} reuniones, así el resto del cálculo no
+     * retiene el lock.
+     */
+    public Report report(int recentCount) {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            int total = meetings.size();
+            int from = Math.max(0, total - recentCount);
+            List<MeetingRef> recent = new ArrayList<>(total - from);
+            List<BitSet> recentBits = new ArrayList<>(total - from);
+            for (int i = total - 1; i >= from; i--) {
+                recent.add(meetings.get(i));
+                recentBits.add((BitSet) attendedBy.get(i).clone());
+            }
+            return new Report(total, List.copyOf(recent), recentBits,
+                    new HashMap<>(userIndex), Arrays.copyOf(attendedCount, userIndex.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onAttendanceRecorded(AttendanceRecordedEvent event) {
+        lock.writeLock().lock();
+        try {
+            Integer m = meetingIndex.get(event.meetingId());
+            if (m == null) {
+                // Reunión desconocida (otra instancia la creó): se reconstruye en el próximo acceso
+                stale = true;
+                return;
+            }
+            int u = indexOfUser(event.userId());
+            BitSet bits = attendedBy.get(m);
+            if (!bits.get(u)) {
+                bits.set(u);
+                attendedCount[u]++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onMeetingCreated(MeetingCreatedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (!meetingIndex.containsKey(event.meetingId())) {
+                meetingIndex.put(event.meetingId(), meetings.size());
+                meetings.add(new MeetingRef(event.meetingId(), event.fecha()));
+                attendedBy.add(new BitSet(userIndex.size()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Reconciliación periódica: la reconstrucción ocurre recién cuando alguien consulta
+    @Scheduled(initialDelay = 600000, fixedDelay = 600000)
+    public void invalidate() {
+        stale = true;
+    }
+
+    private void ensureLoaded() {
+        if (!stale) return;
+        lock.writeLock().lock();
+        try {
+            if (stale) rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        userIndex.clear();
+        meetingIndex.clear();
+        meetings.clear();
+        attendedBy.clear();
+        attendedCount = new int[1024];
+
+        List<Meeting> all = meetingRepository.findAllByOrderByFechaDesc();
+        for (int i = all.size() - 1; i >= 0; i--) {
+            Meeting meeting = all.get(i);
+            meetingIndex.put(meeting.getId(), meetings.size());
+            meetings.add(new MeetingRef(meeting.getId(), meeting.getFecha()));
+            attendedBy.add(new BitSet());
+        }
+
+        int pairs = 0;
+        for (Object[] row : attendanceRepository.findAllUserMeetingPairs()) {
+            Integer m = meetingIndex.get((Long) row[1]);
+            if (m == null) continue;
+            int u = indexOfUser((Long) row[0]);
+            BitSet bits = attendedBy.get(m);
+            if (!bits.get(u)) {
+                bits.set(u);
+                attendedCount[u]++;
+                pairs++;
+            }
+        }
+
+        stale = false;
+        System.out.println("🧮 Matriz de asistencia reconstruida: " + userIndex.size() + " usuarios × "
+                + meetings.size() + " reuniones, " + pairs + " asistencias en "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private int indexOfUser(Long userId) {
+        Integer existing = userIndex.get(userId);
+        if (existing != null) return existing;
+        int u = userIndex.size();
+        userIndex.put(userId, u);
+        if (u >= attendedCount.length) {
+            attendedCount = Arrays.copyOf(attendedCount, Math.max(1024, attendedCount.length * 2));
+        }
+        return u;
+    }
+
+    /**
+     * Snapshot de la matriz para un reporte. Las reuniones recientes van de la
+     * más nueva (posición 0) a la más antigua.
+     */
+    public static final class Report {
+        private final long totalMeetings;
+        private final List<MeetingRef> recentMeetings;
+        private final List<BitSet> recentBits;
+        private final Map<Long, Integer> userIndex;
+        private final int[] attendedCount;
+
+        private Report(long totalMeetings, List<MeetingRef> recentMeetings, List<BitSet> recentBits,
+                       Map<Long, Integer> userIndex, int[] attendedCount) {
+            this.totalMeetings = totalMeetings;
+            this.recentMeetings = recentMeetings;
+            this.recentBits = recentBits;
+            this.userIndex = userIndex;
+            this.attendedCount = attendedCount;
+        }
+
+        public long totalMeetings() {
+            return totalMeetings;
+        }
+
+        public List<MeetingRef> recentMeetings() {
+            return recentMeetings;
+        }
+
+        public long attended(Long userId) {
+            Integer u = userIndex.get(userId);
+            return u != null ? attendedCount[u] : 0;
+        }
+
+        // ¿Asistió el usuario a la reunión reciente en la posición indicada?
+        public boolean attendedRecent(Long userId, int position) {
+            Integer u = userIndex.get(userId);
+            return u != null && recentBits.get(position).get(u);
+        }
+
+        // true si el usuario faltó a todas las últimas n reuniones (false si hay menos de n)
+        public boolean missedLast(Long userId, int n) {
+            if (recentBits.size() < n) return false;
+            Integer u = userIndex.get(userId);
+            if (u == null) return true;
+            for (int i = 0; i < n; i++) {
+                if (recentBits.get(i).get(u)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.event.AttendanceRecordedEvent;
+import com.aetos.backend.event.MeetingCreatedEvent;
+import com.aetos.backend.model.Meeting;
+import com.aetos.backend.repository.AttendanceRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Difusión por Server-Sent Events de las asistencias de la reunión activa.
+ *
+ * Cada pantalla de líder recibe un snapshot inicial al conectarse y después
+ * un evento por cada asistencia registrada. El payload se serializa una sola
+ * vez por evento y se reparte desde un hilo propio, así que entre marcaciones
+ * las conexiones abiertas no consumen consultas ni CPU.
+ */
+@Service
+public class AttendanceStreamHub {
+
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    private final ActiveMeetingRegistry activeMeetingRegistry;
+    private final AttendanceRepository attendanceRepository;
+    private final ObjectMapper objectMapper;
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final ExecutorService fanout = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "attendance-sse");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public AttendanceStreamHub(ActiveMeetingRegistry activeMeetingRegistry,
+                               AttendanceRepository attendanceRepository,
+                               ObjectMapper objectMapper) {
+        this.activeMeetingRegistry = activeMeetingRegistry;
+        this.attendanceRepository = attendanceRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Registra la pantalla antes de armar su snapshot, y el snapshot sale por
+     * el mismo hilo que los eventos: una asistencia registrada mientras tanto
+     * llega como evento, viene incluida en el snapshot, o ambas cosas (el
+     * cliente descarta duplicados por userId). Nunca se pierde.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        fanout.execute(() -> {
+            try {
+                emitter.send(SseEmitter.event().name("snapshot").data(toJson(buildSnapshot())));
+            } catch (IOException | IllegalStateException e) {
+                emitters.remove(emitter);
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+
+    @EventListener
+    public void onAttendanceRecorded(AttendanceRecordedEvent event) {
+        if (emitters.isEmpty()) return;
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("meetingId", event.meetingId());
+        payload.put("userId", event.userId());
+        payload.put("userName", event.userName());
+        payload.put("timestamp", event.timestamp().toString());
+        payload.put("manual", event.manual());
+        broadcast("attendance", payload);
+    }
+
+    // Una reunión nueva invalida lo que muestran las pantallas: se les envía un snapshot vacío
+    @EventListener
+    public void onMeetingCreated(MeetingCreatedEvent event) {
+        if (emitters.isEmpty()) return;
+        fanout.execute(() -> send("snapshot", toJson(buildSnapshot())));
+    }
+
+    // Comentario periódico para mantener abiertos los proxies y detectar clientes caídos
+    @Scheduled(fixedDelay = 25000)
+    public void heartbeat() {
+        if (emitters.isEmpty()) return;
+        fanout.execute(() -> {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().comment("ping"));
+                } catch (IOException | IllegalStateException e) {
+                    emitters.remove(emitter);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fanout.shutdownNow();
+        for (SseEmitter emitter : emitters) {
+            emitter.complete();
+        }
+        emitters.clear();
+    }
+
+    private void broadcast(String name, Map<String, Object> payload) {
+        String json = toJson(payload);
+        fanout.execute(() -> send(name, json));
+    }
+
+    private void send(String name, String json) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(json));
+            } catch (IOException | IllegalStateException e) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    private Map<String, Object> buildSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        Meeting meeting = activeMeetingRegistry.current().orElse(null);
+        if (meeting == null) {
+            snapshot.put("meeting", null);
+            snapshot.put("attendances", List.of());
+            return snapshot;
+        }
+        var attendances = attendanceRepository.findByMeeting_IdOrderByTimestampAsc(meeting.getId()).stream()
+                .map(a -> Map.of(
+                    "id", a.getId(),
+                    "userId", a.getUser().getId(),
+                    "userName", (a.getUser().getNombre() != null ? a.getUser().getNombre() : "") + " " + (a.getUser().getApellidos() != null ? a.getUser().getApellidos() : ""),
+                    "timestamp", a.getTimestamp().toString()
+                ))
+                .toList();
+        snapshot.put("meeting", Map.of(
+            "id", meeting.getId(),
+            "fecha", meeting.getFecha().toString(),
+            "activa", meeting.isActiva()
+        ));
+        snapshot.put("expiresAt", meeting.getFecha().plusMinutes(120).toString());
+        snapshot.put("attendances", attendances);
+        return snapshot;
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el evento de asistencia", e);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.event.AttendanceRecordedEvent;
+import com.aetos.backend.model.Meeting;
+import com.aetos.backend.model.Role;
+import com.aetos.backend.repository.AttendanceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingesta de asistencias por QR pensada para ráfagas.
+ *
+ * El hilo de la request solo valida el token contra la reunión activa en
+ * memoria, deduplica (reunión, usuario) con un set concurrente y encola el
+ * registro. Un único hilo escritor vacía la cola con inserts JDBC por lotes;
+ * el índice único attendances(meeting_id, user_id), que se crea al arrancar,
+ * es la garantía final.
+ *
+ * Una asistencia aceptada no se descarta: si la BD no responde, el escritor
+ * reintenta el lote indefinidamente (con espera creciente) y, tras
+ * MAX_WRITE_ATTEMPTS fallos seguidos, las nuevas marcaciones se rechazan con
+ * OVERLOADED hasta que vuelva, en vez de aceptarse. Si la aplicación se detiene
+ * con la BD caída, lo pendiente se vuelca a {@code checkin.spill-file} y se
+ * reencola al arrancar.
+ */
+@Service
+public class CheckInPipeline {
+
+    public enum Result { ACCEPTED, DUPLICATE, INVALID_TOKEN, OVERLOADED }
+
+    private record CheckIn(Long meetingId, Long userId, String userName, Role role, LocalDateTime timestamp) {}
+
+    private record SeenUsers(Long meetingId, Set<Long> userIds) {}
+
+    private static final String INSERT_SQL =
+            "INSERT INTO attendances (meeting_id, user_id, timestamp, marked_manually) VALUES (?, ?, ?, false) " +
+            "ON CONFLICT DO NOTHING";
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    private static final long MAX_RETRY_DELAY_MS = 5000;
+
+    private final ActiveMeetingRegistry activeMeetingRegistry;
+    private final AttendanceRepository attendanceRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${checkin.queue.capacity:5000}")
+    private int queueCapacity;
+
+    @Value("${checkin.batch.size:200}")
+    private int batchSize;
+
+    @Value("${checkin.spill-file:checkin-spill.csv}")
+    private Path spillFile;
+
+    private BlockingQueue<CheckIn> queue;
+    private volatile SeenUsers seen;
+    private volatile boolean running;
+    // La BD lleva MAX_WRITE_ATTEMPTS fallos seguidos: no se aceptan marcaciones nuevas
+    private volatile boolean degraded;
+    private Thread writer;
+
+    public CheckInPipeline(ActiveMeetingRegistry activeMeetingRegistry,
+                           AttendanceRepository attendanceRepository,
+                           JdbcTemplate jdbcTemplate,
+                           ApplicationEventPublisher eventPublisher) {
+        this.activeMeetingRegistry = activeMeetingRegistry;
+        this.attendanceRepository = attendanceRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    void start() {
+        ensureUniqueIndex();
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        replaySpill();
+        running = true;
+        writer = new Thread(this::drainLoop, "checkin-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Sin este índice el ON CONFLICT del insert no tiene con qué chocar; con duplicados previos no se podría crear
+    private void ensureUniqueIndex() {
+        try {
+            // El dedupe recorre toda la tabla: solo hace falta la primera vez
+            Boolean exists = jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_indexes WHERE schemaname = current_schema() AND tablename = 'attendances' " +
+                    "AND indexname = 'uk_attendances_meeting_user')", Boolean.class);
+            if (Boolean.TRUE.equals(exists)) return;
+            int removed = jdbcTemplate.update(
+                    "DELETE FROM attendances a USING attendances b " +
+                    "WHERE a.meeting_id = b.meeting_id AND a.user_id = b.user_id AND a.id > b.id");
+            if (removed > 0) {
+                System.out.println("🧹 Asistencias duplicadas eliminadas: " + removed);
+            }
+            jdbcTemplate.execute(
+                    "CREATE UNIQUE INDEX IF NOT EXISTS uk_attendances_meeting_user ON attendances (meeting_id, user_id)");
+        } catch (Exception e) {
+            System.err.println("⚠️ No se pudo crear el índice único de asistencias: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.join(10000);
+        if (writer.isAlive()) {
+            // Sigue esperando a la BD: se interrumpe para que vuelque lo pendiente a disco
+            writer.interrupt();
+            writer.join(5000);
+        }
+    }
+
+    public Result submit(String tokenQr, Long userId, String userName, Role role) {
+        Meeting meeting = activeMeetingRegistry.matchToken(tokenQr).orElse(null);
+        if (meeting == null) {
+            return Result.INVALID_TOKEN;
+        }
+        if (degraded) {
+            // Sin BD no se puede garantizar la escritura: el miembro reintenta luego
+            return Result.OVERLOADED;
+        }
+        Set<Long> seenUsers = seenFor(meeting.getId());
+        if (!seenUsers.add(userId)) {
+            return Result.DUPLICATE;
+        }
+        if (!queue.offer(new CheckIn(meeting.getId(), userId, userName, role, LocalDateTime.now()))) {
+            seenUsers.remove(userId);
+            return Result.OVERLOADED;
+        }
+        return Result.ACCEPTED;
+    }
+
+    // Asistencias registradas por otras vías (líder automático, manual) también cuentan como vistas
+    @EventListener
+    public void onAttendanceRecorded(AttendanceRecordedEvent event) {
+        SeenUsers current = seen;
+        if (current != null && current.meetingId().equals(event.meetingId())) {
+            current.userIds().add(event.userId());
+        }
+    }
+
+    // Set de usuarios ya registrados en la reunión; se siembra desde la BD una vez por reunión
+    private Set<Long> seenFor(Long meetingId) {
+        SeenUsers current = seen;
+        if (current != null && current.meetingId().equals(meetingId)) {
+            return current.userIds();
+        }
+        synchronized (this) {
+            current = seen;
+            if (current != null && current.meetingId().equals(meetingId)) {
+                return current.userIds();
+            }
+            Set<Long> userIds = ConcurrentHashMap.newKeySet();
+            userIds.addAll(attendanceRepository.findUserIdsByMeetingId(meetingId));
+            seen = new SeenUsers(meetingId, userIds);
+            return userIds;
+        }
+    }
+
+    private void drainLoop() {
+        List<CheckIn> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                CheckIn first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Error en el escritor de asistencias: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeWithRetry(List<CheckIn> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                int[][] counts = jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, c) -> {
+                    ps.setLong(1, c.meetingId());
+                    ps.setLong(2, c.userId());
+                    ps.setTimestamp(3, Timestamp.valueOf(c.timestamp()));
+                });
+                if (degraded) {
+                    degraded = false;
+                    System.out.println("✅ Escritura de asistencias restablecida");
+                }
+                publishInserted(batch, counts);
+                return;
+            } catch (Exception e) {
+                System.err.println("⚠️ Lote de " + batch.size() + " asistencias falló (intento " + attempt + "): " + e.getMessage());
+                if (attempt == MAX_WRITE_ATTEMPTS) {
+                    degraded = true;
+                    System.err.println("❌ BD no disponible: se rechazan marcaciones nuevas hasta que vuelva");
+                }
+                if (!running) {
+                    spill(batch);
+                    return;
+                }
+                try {
+                    Thread.sleep(Math.min(200L << Math.min(attempt, 10), MAX_RETRY_DELAY_MS));
+                } catch (InterruptedException ie) {
+                    spill(batch);
+                    throw ie;
+                }
+            }
+        }
+    }
+
+    // Vuelca el lote y lo que quede en la cola al archivo de respaldo (apagado con la BD caída)
+    private void spill(List<CheckIn> batch) {
+        List<CheckIn> pending = new ArrayList<>(batch);
+        queue.drainTo(pending);
+        try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (CheckIn c : pending) {
+                // userName al final: puede contener comas
+                out.write(c.meetingId() + "," + c.userId() + "," + (c.role() != null ? c.role() : "") + ","
+                        + c.timestamp() + "," + (c.userName() != null ? c.userName() : ""));
+                out.newLine();
+            }
+            System.err.println("💾 " + pending.size() + " asistencias pendientes guardadas en " + spillFile.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("❌ No se pudieron guardar " + pending.size() + " asistencias pendientes: " + e.getMessage());
+        }
+    }
+
+    // Reencola las asistencias que quedaron en el archivo de respaldo en el último apagado
+    private void replaySpill() {
+        if (!Files.exists(spillFile)) return;
+        try {
+            List<String> lines = Files.readAllLines(spillFile, StandardCharsets.UTF_8);
+            int restored = 0;
+            for (String line : lines) {
+                String[] f = line.split(",", 5);
+                if (f.length < 5) continue;
+                CheckIn c = new CheckIn(Long.valueOf(f[0]), Long.valueOf(f[1]),
+                        f[4], f[2].isEmpty() ? null : Role.valueOf(f[2]), LocalDateTime.parse(f[3]));
+                if (!queue.offer(c)) {
+                    System.err.println("⚠️ Cola llena al restaurar asistencias; el resto queda en " + spillFile);
+                    Files.write(spillFile, lines.subList(restored, lines.size()), StandardCharsets.UTF_8);
+                    return;
+                }
+                restored++;
+            }
+            Files.delete(spillFile);
+            System.out.println("♻️ Asistencias restauradas desde " + spillFile + ": " + restored);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ No se pudo leer " + spillFile + ": " + e.getMessage());
+        }
+    }
+
+    private void publishInserted(List<CheckIn> batch, int[][] counts) {
+        int i = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                CheckIn c = batch.get(i++);
+                // 0 = conflicto con la restricción única (ya existía); SUCCESS_NO_INFO se trata como insertado
+                if (count != 0) {
+                    eventPublisher.publishEvent(new AttendanceRecordedEvent(
+                            c.meetingId(), c.userId(), c.userName(), c.role(), c.timestamp(), false));
+                }
+            }
+        }
+        System.out.println("✅ Lote de asistencias escrito: " + batch.size());
+    }
+}
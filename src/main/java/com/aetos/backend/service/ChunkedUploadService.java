@@ -0,0 +1,211 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.model.UploadSession;
+import com.aetos.backend.repository.UploadSessionRepository;
+import com.aetos.backend.storage.BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Subidas reanudables por partes para recursos grandes.
+ *
+ * Cada sesión tiene un temporal en el directorio de staging del BlobStore; las
+ * partes se escriben directamente en él desde el stream de la request, sin
+ * pasar por memoria. El tamaño del temporal es el offset confirmado: si la
+ * conexión se corta a mitad de una parte, lo ya escrito queda y el cliente
+ * retoma desde ahí. Al finalizar se verifican tamaño y SHA-256 y el archivo se
+ * entrega al ContentAddressedStore como cualquier otra subida.
+ */
+@Service
+public class ChunkedUploadService {
+
+    /** El offset enviado no coincide con lo recibido (parte repetida o perdida). */
+    public static class OffsetMismatchException extends IllegalStateException {
+        private final long currentOffset;
+
+        public OffsetMismatchException(long currentOffset) {
+            super("Offset inválido, el servidor tiene " + currentOffset + " bytes");
+            this.currentOffset = currentOffset;
+        }
+
+        public long getCurrentOffset() {
+            return currentOffset;
+        }
+    }
+
+    private final UploadSessionRepository sessionRepository;
+    private final ContentAddressedStore contentStore;
+    private final BlobStore blobStore;
+    private final long maxSize;
+    private final long maxChunk;
+    private final Duration sessionTtl;
+
+    // Una sola escritura a la vez por sesión (reintentos del cliente en paralelo)
+    private final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(UploadSessionRepository sessionRepository,
+                                ContentAddressedStore contentStore,
+                                BlobStore blobStore,
+                                @Value("${resources.upload.max-size:1GB}") DataSize maxSize,
+                                @Value("${resources.upload.chunk-size:8MB}") DataSize maxChunk,
+                                @Value("${resources.upload.session-ttl:24h}") Duration sessionTtl) {
+        this.sessionRepository = sessionRepository;
+        this.contentStore = contentStore;
+        this.blobStore = blobStore;
+        this.maxSize = maxSize.toBytes();
+        this.maxChunk = maxChunk.toBytes();
+        this.sessionTtl = sessionTtl;
+    }
+
+    public long maxChunkSize() {
+        return maxChunk;
+    }
+
+    public UploadSession create(String email, String nombre, String descripcion, String fileName,
+                                String extension, long totalBytes, String expectedSha256) throws IOException {
+        if (totalBytes <= 0 || totalBytes > maxSize) {
+            throw new IllegalArgumentException("El archivo debe pesar entre 1 byte y " + DataSize.ofBytes(maxSize).toMegabytes() + " MB");
+        }
+        if (expectedSha256 != null && !expectedSha256.isBlank() && !expectedSha256.matches("(?i)[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("sha256 inválido");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .usuarioEmail(email)
+                .nombre(nombre)
+                .descripcion(descripcion)
+                .nombreArchivo(fileName)
+                .extension(extension)
+                .totalBytes(totalBytes)
+                .expectedSha256(expectedSha256 == null || expectedSha256.isBlank() ? null : expectedSha256.toLowerCase())
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        Files.deleteIfExists(partFile(session));
+        Files.createFile(partFile(session));
+        return sessionRepository.save(session);
+    }
+
+    // Sesión del usuario indicado; vacío si no existe o es de otro usuario
+    public Optional<UploadSession> find(String id, String email) {
+        return sessionRepository.findById(id).filter(s -> s.getUsuarioEmail().equals(email));
+    }
+
+    public long offset(UploadSession session) throws IOException {
+        Path part = partFile(session);
+        return Files.exists(part) ? Files.size(part) : 0;
+    }
+
+    /**
+     * Agrega una parte que empieza en {@code offset}. Devuelve el nuevo offset.
+     * Lanza OffsetMismatchException si el offset no es el esperado e
+     * IllegalArgumentException si la parte excede el tamaño declarado.
+     */
+    public long append(UploadSession session, long offset, InputStream body) throws IOException {
+        ReentrantLock lock = locks.computeIfAbsent(session.getId(), k -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            throw new OffsetMismatchException(offset(session));
+        }
+        try (FileChannel channel = FileChannel.open(partFile(session), StandardOpenOption.WRITE)) {
+            long current = channel.size();
+            if (offset != current) {
+                throw new OffsetMismatchException(current);
+            }
+            long allowed = Math.min(maxChunk, session.getTotalBytes() - current);
+            ReadableByteChannel source = Channels.newChannel(body);
+            long position = current;
+            try {
+                while (position - current < allowed) {
+                    long n = channel.transferFrom(source, position, allowed - (position - current));
+                    if (n <= 0) break;
+                    position += n;
+                }
+                // Sobra contenido: la parte excede el límite o el tamaño declarado
+                if (source.read(ByteBuffer.allocate(1)) >= 0) {
+                    channel.truncate(current);
+                    throw new IllegalArgumentException("La parte excede el tamaño permitido (" + allowed + " bytes)");
+                }
+            } finally {
+                // Aunque la conexión se corte, lo escrito hasta aquí queda como punto de reanudación
+                channel.force(false);
+                session.setUpdatedAt(LocalDateTime.now());
+                sessionRepository.save(session);
+            }
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Verifica el archivo completo y lo deja listo para publicar. La sesión se
+     * elimina; si la verificación falla el temporal se descarta.
+     */
+    public ContentAddressedStore.StagedBlob complete(UploadSession session, String contentType) throws IOException {
+        ReentrantLock lock = locks.computeIfAbsent(session.getId(), k -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            throw new OffsetMismatchException(offset(session));
+        }
+        try {
+            long received = offset(session);
+            if (received != session.getTotalBytes()) {
+                throw new OffsetMismatchException(received);
+            }
+            ContentAddressedStore.StagedBlob staged =
+                    contentStore.adopt(partFile(session), BlobStore.RESOURCES,
+                            session.getExtension(), contentType);
+            sessionRepository.delete(session);
+            if (session.getExpectedSha256() != null && !session.getExpectedSha256().equals(staged.sha256())) {
+                contentStore.discard(staged);
+                throw new IllegalArgumentException("El checksum no coincide, vuelve a subir el archivo");
+            }
+            return staged;
+        } finally {
+            lock.unlock();
+            locks.remove(session.getId());
+        }
+    }
+
+    public void abort(UploadSession session) throws IOException {
+        sessionRepository.delete(session);
+        Files.deleteIfExists(partFile(session));
+        locks.remove(session.getId());
+    }
+
+    // Limpia sesiones abandonadas y sus temporales
+    @Scheduled(initialDelay = 300000, fixedDelay = 3600000)
+    public void purgeExpired() {
+        for (UploadSession session : sessionRepository.findTop100ByUpdatedAtBefore(LocalDateTime.now().minus(sessionTtl))) {
+            try {
+                abort(session);
+                System.out.println("🧹 Subida abandonada eliminada: " + session.getId());
+            } catch (Exception e) {
+                System.err.println("Error limpiando subida " + session.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Path partFile(UploadSession session) throws IOException {
+        // El id es un UUID generado aquí; se valida igual para no salir del directorio
+        return blobStore.stagingDir().resolve("chunked-" + UUID.fromString(session.getId()) + ".part");
+    }
+}
@@ -0,0 +1,203 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.storage.BlobStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Almacenamiento de archivos direccionado por contenido.
+ *
+ * El SHA-256 se calcula mientras la subida se copia a un temporal del
+ * BlobStore, y el archivo se publica como {@code <sha256>.<ext>} en el
+ * espacio de nombres indicado: si ya existe un blob con ese hash se descarta
+ * el temporal y se reutiliza. El conteo de referencias
+ * es el número de filas que apuntan al blob; {@link #release} solo borra el
+ * archivo cuando ese conteo llega a cero. Publicar y liberar un mismo hash se
+ * serializan con un advisory lock de PostgreSQL tomado en la transacción que
+ * registra o cuenta las filas, así un borrado en un nodo no se lleva un blob
+ * que otra subida (en cualquier nodo que comparta el bucket) acaba de reutilizar.
+ */
+@Service
+public class ContentAddressedStore {
+
+    public record StagedBlob(String namespace, Path tempFile, String sha256, String ext, String contentType, long size) {
+        public String fileName() {
+            return ext.isEmpty() ? sha256 : sha256 + "." + ext;
+        }
+    }
+
+    public record StoredBlob(String fileName, String sha256, long size, boolean reused) {}
+
+    @FunctionalInterface
+    public interface Registration<T> {
+        T register(StoredBlob blob) throws IOException;
+    }
+
+    private final BlobStore blobStore;
+    private final ImageCache imageCache;
+    private final ImageDerivativeService derivatives;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ContentAddressedStore(BlobStore blobStore, ImageCache imageCache, ImageDerivativeService derivatives,
+                                 JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.blobStore = blobStore;
+        this.imageCache = imageCache;
+        this.derivatives = derivatives;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // Copia la subida a un temporal local calculando su hash
+    public StagedBlob stage(InputStream in, String namespace, String ext, String contentType) throws IOException {
+        Path tmp = blobStore.stagingDir().resolve("upload-" + UUID.randomUUID() + ".tmp");
+        MessageDigest digest = sha256();
+        long size;
+        try (DigestInputStream hashing = new DigestInputStream(in, digest)) {
+            size = Files.copy(hashing, tmp);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return new StagedBlob(namespace, tmp, HexFormat.of().formatHex(digest.digest()), safeExtension(ext), contentType, size);
+    }
+
+    /**
+     * Adopta un archivo ya armado en el directorio de staging (subidas por
+     * partes) calculando su hash en una sola lectura, sin copiarlo.
+     */
+    public StagedBlob adopt(Path file, String namespace, String ext, String contentType) throws IOException {
+        MessageDigest digest = sha256();
+        try (DigestInputStream hashing = new DigestInputStream(Files.newInputStream(file), digest)) {
+            hashing.transferTo(OutputStream.nullOutputStream());
+        }
+        return new StagedBlob(namespace, file, HexFormat.of().formatHex(digest.digest()), safeExtension(ext), contentType, Files.size(file));
+    }
+
+    // La extensión forma parte del nombre: solo se admiten caracteres seguros
+    private static String safeExtension(String ext) {
+        String safeExt = ext == null ? "" : ext.toLowerCase().replaceAll("[^a-z0-9]", "");
+        return safeExt.length() > 10 ? safeExt.substring(0, 10) : safeExt;
+    }
+
+    /**
+     * Publica el blob (o reutiliza el existente) y registra la fila que lo
+     * referencia. La subida va fuera de la transacción (puede ser un PUT de
+     * 1 GB a S3 y no debe retener una conexión del pool); como la clave es el
+     * hash, subir dos veces el mismo contenido es inofensivo. Solo la
+     * comprobación de existencia y el registro corren bajo el lock, así un
+     * release concurrente siempre ve la referencia. Si algo falla después de
+     * subir, el blob se libera por el camino normal ({@code references} cuenta
+     * las filas que lo siguen usando).
+     */
+    public <T> T commit(StagedBlob staged, Registration<T> registration, LongSupplier references) throws IOException {
+        String namespace = staged.namespace();
+        String fileName = staged.fileName();
+        boolean reused;
+        try {
+            reused = blobStore.exists(namespace, fileName);
+            if (reused) {
+                Files.deleteIfExists(staged.tempFile());
+            } else {
+                blobStore.putFile(namespace, fileName, staged.tempFile(), staged.contentType());
+            }
+        } catch (IOException | RuntimeException e) {
+            discard(staged);
+            throw e;
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                lock(staged.sha256());
+                try {
+                    // Un release de otra instancia pudo borrarlo entre la subida y el lock
+                    if (!blobStore.exists(namespace, fileName)) {
+                        throw new IOException("El archivo " + fileName + " se liberó durante la subida, reintenta");
+                    }
+                    return registration.register(new StoredBlob(fileName, staged.sha256(), staged.size(), reused));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            release(namespace, fileName, references);
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            release(namespace, fileName, references);
+            throw e;
+        }
+    }
+
+    // Descarta un temporal que no llegó a publicarse (validación fallida)
+    public void discard(StagedBlob staged) {
+        try {
+            Files.deleteIfExists(staged.tempFile());
+        } catch (IOException e) {
+            System.err.println("Error eliminando temporal de subida: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Borra el archivo si ya no quedan filas que lo referencien. Debe llamarse
+     * después de eliminar o reasignar la fila propia.
+     */
+    public boolean release(String namespace, String fileName, LongSupplier remainingReferences) {
+        if (fileName == null || fileName.isBlank()) return false;
+        try {
+            Boolean deleted = transactionTemplate.execute(status -> {
+                lock(fileName);
+                if (remainingReferences.getAsLong() > 0) return false;
+                try {
+                    imageCache.invalidate(namespace, fileName);
+                    boolean removed = blobStore.delete(namespace, fileName);
+                    if (!BlobStore.RESOURCES.equals(namespace)) {
+                        derivatives.purge(namespace, fileName);
+                    }
+                    return removed;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return Boolean.TRUE.equals(deleted);
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Error eliminando archivo " + fileName + ": " + e.getMessage());
+            return false;
+        } catch (RuntimeException e) {
+            System.err.println("Error liberando archivo " + fileName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Advisory lock de transacción por hash, compartido por todos los nodos.
+     * Blob y portada de un mismo contenido comparten el hash como prefijo, y
+     * por tanto el lock. Se libera solo al terminar la transacción.
+     */
+    private void lock(String name) {
+        int dot = name.indexOf('.');
+        String key = dot > 0 ? name.substring(0, dot) : name;
+        jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(hashtext(?))", "cas:" + key);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,19 +1,34 @@
 package com.aetos.backend.service;
 
+import com.aetos.backend.model.OutboxChannel;
+import com.aetos.backend.model.OutboxMessage;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
 @Service
 public class EmailService {
 
+    private static final String KIND_VERIFICATION = "verification";
+    private static final String KIND_PASSWORD_RESET = "password-reset";
+    private static final String KIND_PROGRAM_REMINDER = "program-reminder";
+
     private final JavaMailSender mailSender;
+    private final NotificationOutbox outbox;
+    private final SmtpConnectionPool smtpPool;
+    private final EmailTemplates templates;
 
     @Value("${spring.mail.username}")
     private String fromEmail;
@@ -21,178 +36,108 @@ public class EmailService {
     @Value("${app.url}")
     private String appUrl;
 
-    public EmailService(JavaMailSender mailSender) {
+    public EmailService(JavaMailSender mailSender, NotificationOutbox outbox, SmtpConnectionPool smtpPool,
+                        EmailTemplates templates) {
         this.mailSender = mailSender;
+        this.outbox = outbox;
+        this.smtpPool = smtpPool;
+        this.templates = templates;
     }
 
-    @Async
+    // Los send* solo encolan en outbox_messages; OutboxDispatcher llama a deliverBatch con reintentos
+
     public void sendVerificationEmail(String toEmail, String token) {
-        String subject = "Confirma tu cuenta AETOS";
-        String confirmUrl = appUrl + "/verify?token=" + token;
-        String text = "Bienvenido a AETOS!\n\n"
-                + "Por favor, confirma tu cuenta haciendo clic en el siguiente enlace:\n"
-                + confirmUrl + "\n\n"
-                + "Este enlace expirará en 24 horas.\n\n"
-                + "Bendiciones!";
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, false, "UTF-8");
-            if (fromEmail != null && !fromEmail.trim().isEmpty()) {
-                helper.setFrom(fromEmail.trim());
-            }
-            helper.setTo(toEmail.trim());
-            helper.setSubject(subject);
-            helper.setText(text, false);
-            mailSender.send(mimeMessage);
-            System.out.println("✅ Email enviado exitosamente a " + toEmail);
-        } catch (MessagingException e) {
-            System.err.println("❌ Error al preparar email de verificación: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("❌ Error al enviar email de verificación: " + e.getMessage());
-        }
+        outbox.enqueue(OutboxChannel.EMAIL, KIND_VERIFICATION, toEmail, Map.of("token", token), null);
     }
 
-    @Async
     public void sendPasswordResetEmail(String toEmail, String token) {
-        String subject = "Restablece tu contraseña - AETOS";
-        String resetUrl = appUrl + "/reset-password?token=" + token;
-        String text = "Hola,\n\n"
-                + "Recibimos una solicitud para restablecer tu contraseña de AETOS.\n\n"
-                + "Haz clic en el siguiente enlace para crear una nueva contraseña:\n"
-                + resetUrl + "\n\n"
-                + "Este enlace expirará en 1 hora.\n\n"
-                + "Si no solicitaste este cambio, ignora este correo.\n\n"
-                + "Bendiciones!";
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, false, "UTF-8");
-            if (fromEmail != null && !fromEmail.trim().isEmpty()) {
-                helper.setFrom(fromEmail.trim());
-            }
-            helper.setTo(toEmail.trim());
-            helper.setSubject(subject);
-            helper.setText(text, false);
-            mailSender.send(mimeMessage);
-            System.out.println("✅ Email de recuperación enviado a " + toEmail);
-        } catch (MessagingException e) {
-            System.err.println("❌ Error al preparar email de recuperación: " + e.getMessage());
-        } catch (Exception e) {
-            System.err.println("❌ Error al enviar email de recuperación: " + e.getMessage());
-        }
+        outbox.enqueue(OutboxChannel.EMAIL, KIND_PASSWORD_RESET, toEmail, Map.of("token", token), null);
     }
 
-    @Async
     public void sendProgramReminderEmail(String toEmail, String nombreUsuario, String parte, 
                                         String fecha, String hora, String horaFin, 
-                                        String lugarNombre, String lugarDireccion) {
-        String subject = "🔔 Recordatorio de tu parte en AETOS - " + fecha;
-        
-        String htmlContent = createProgramReminderHtml(nombreUsuario, parte, fecha, hora, horaFin, 
-                                                       lugarNombre, lugarDireccion);
+                                        String lugarNombre, String lugarDireccion,
+                                        Long notificationId) {
+        Map<String, String> payload = new HashMap<>();
+        payload.put("nombreUsuario", nombreUsuario);
+        payload.put("parte", parte);
+        payload.put("fecha", fecha);
+        payload.put("hora", hora);
+        payload.put("horaFin", horaFin);
+        payload.put("lugarNombre", lugarNombre);
+        payload.put("lugarDireccion", lugarDireccion);
+        outbox.enqueue(OutboxChannel.EMAIL, KIND_PROGRAM_REMINDER, toEmail, payload, notificationId);
+    }
 
-        MimeMessage mimeMessage = mailSender.createMimeMessage();
-        
+    /**
+     * Envía un lote de emails encolados por una misma conexión SMTP del pool.
+     * El resultado de cada mensaje (null si salió bien) se informa a
+     * {@code onResult}; si la conexión se cae o llega a su tope de mensajes se
+     * pide otra para el resto.
+     * Justo antes de cada envío se consulta {@code stillClaimed}: si devuelve
+     * false el mensaje se omite (lo tomó otro despachador).
+     */
+    public void deliverBatch(List<OutboxMessage> messages,
+                             Predicate<OutboxMessage> stillClaimed,
+                             Function<OutboxMessage, Map<String, String>> payloads,
+                             BiConsumer<OutboxMessage, Exception> onResult) {
+        SmtpConnectionPool.Connection connection = null;
         try {
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
-            helper.setFrom(fromEmail);
-            helper.setTo(toEmail);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true);
-            
-            mailSender.send(mimeMessage);
-            System.out.println("✅ Email enviado exitosamente a " + toEmail);
-        } catch (MessagingException e) {
-            System.err.println("❌ Error al enviar email de recordatorio: " + e.getMessage());
+            for (OutboxMessage message : messages) {
+                if (!stillClaimed.test(message)) continue;
+                Exception error = null;
+                try {
+                    MimeMessage mimeMessage = prepare(message.getKind(), message.getRecipient(), payloads.apply(message));
+                    if (connection != null && connection.isSpent()) {
+                        connection.close();
+                        connection = null;
+                    }
+                    if (connection == null) {
+                        connection = smtpPool.borrow();
+                    }
+                    connection.send(mimeMessage);
+                    System.out.println("✅ Email " + message.getKind() + " enviado a " + message.getRecipient());
+                } catch (Exception e) {
+                    error = e;
+                }
+                onResult.accept(message, error);
+            }
+        } finally {
+            if (connection != null) connection.close();
         }
     }
 
-    private String createProgramReminderHtml(String nombreUsuario, String parte, String fecha, 
-                                            String hora, String horaFin, String lugarNombre, 
-                                            String lugarDireccion) {
-        String parteEmoji = getParteEmoji(parte);
-        
-        return "<!DOCTYPE html>" +
-            "<html>" +
-            "<head>" +
-            "  <meta charset='UTF-8'>" +
-            "  <style>" +
-            "    body { font-family: 'Segoe UI', Tahoma, Geneva, Verdana, sans-serif; line-height: 1.6; color: #333; }" +
-            "    .container { max-width: 600px; margin: 0 auto; padding: 20px; background-color: #f9f9f9; }" +
-            "    .card { background: white; border-radius: 10px; padding: 30px; box-shadow: 0 2px 10px rgba(0,0,0,0.1); }" +
-            "    .header { text-align: center; margin-bottom: 30px; }" +
-            "    .header h1 { color: #4a90e2; margin: 10px 0; font-size: 24px; }" +
-            "    .bell-icon { font-size: 48px; }" +
-            "    .greeting { font-size: 18px; margin-bottom: 20px; }" +
-            "    .parte-box { background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); color: white; " +
-            "                 padding: 20px; border-radius: 8px; text-align: center; margin: 20px 0; font-size: 20px; }" +
-            "    .info-section { margin: 25px 0; }" +
-            "    .info-item { display: flex; align-items: flex-start; margin: 15px 0; padding: 12px; " +
-            "                 background: #f8f9fa; border-radius: 6px; }" +
-            "    .info-icon { font-size: 24px; margin-right: 15px; min-width: 30px; }" +
-            "    .info-content { flex: 1; }" +
-            "    .info-label { font-weight: bold; color: #555; font-size: 14px; }" +
-            "    .info-value { color: #333; font-size: 16px; margin-top: 3px; }" +
-            "    .footer { text-align: center; margin-top: 30px; padding-top: 20px; " +
-            "              border-top: 2px solid #e0e0e0; color: #666; }" +
-            "    .footer-message { font-size: 18px; color: #4a90e2; font-weight: bold; }" +
-            "    .signature { margin-top: 15px; font-style: italic; color: #888; }" +
-            "  </style>" +
-            "</head>" +
-            "<body>" +
-            "  <div class='container'>" +
-            "    <div class='card'>" +
-            "      <div class='header'>" +
-            "        <div class='bell-icon'>🔔</div>" +
-            "        <h1>RECORDATORIO AETOS</h1>" +
-            "      </div>" +
-            "      " +
-            "      <div class='greeting'>" +
-            "        Hola <strong>" + nombreUsuario + "</strong>," +
-            "      </div>" +
-            "      " +
-            "      <p>Te recordamos que tienes asignada la siguiente parte en el programa:</p>" +
-            "      " +
-            "      <div class='parte-box'>" +
-            "        " + parteEmoji + " " + parte +
-            "      </div>" +
-            "      " +
-            "      <div class='info-section'>" +
-            "        <div class='info-item'>" +
-            "          <div class='info-icon'>📅</div>" +
-            "          <div class='info-content'>" +
-            "            <div class='info-label'>FECHA</div>" +
-            "            <div class='info-value'>" + fecha + "</div>" +
-            "          </div>" +
-            "        </div>" +
-            "        " +
-            "        <div class='info-item'>" +
-            "          <div class='info-icon'>🕐</div>" +
-            "          <div class='info-content'>" +
-            "            <div class='info-label'>HORA</div>" +
-            "            <div class='info-value'>" + hora + " - " + horaFin + "</div>" +
-            "          </div>" +
-            "        </div>" +
-            (lugarNombre != null ? 
-            "        " +
-            "        <div class='info-item'>" +
-            "          <div class='info-icon'>📍</div>" +
-            "          <div class='info-content'>" +
-            "            <div class='info-label'>LUGAR</div>" +
-            "            <div class='info-value'>" + lugarNombre + 
-            (lugarDireccion != null ? "<br><small style='color: #666;'>" + lugarDireccion + "</small>" : "") +
-            "</div>" +
-            "          </div>" +
-            "        </div>" : "") +
-            "      </div>" +
-            "      " +
-            "      <div class='footer'>" +
-            "        <div class='footer-message'>¡Te esperamos! 🙏✨</div>" +
-            "        <div class='signature'>Bendiciones del equipo AETOS</div>" +
-            "      </div>" +
-            "    </div>" +
-            "  </div>" +
-            "</body>" +
-            "</html>";
+    private MimeMessage prepare(String kind, String toEmail, Map<String, String> payload) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper;
+        switch (kind) {
+            case KIND_VERIFICATION -> {
+                helper = new MimeMessageHelper(mimeMessage, false, "UTF-8");
+                helper.setSubject("Confirma tu cuenta AETOS");
+                helper.setText(templates.render(EmailTemplates.VERIFICATION,
+                        Map.of("confirmUrl", appUrl + "/verify?token=" + payload.get("token"))), false);
+            }
+            case KIND_PASSWORD_RESET -> {
+                helper = new MimeMessageHelper(mimeMessage, false, "UTF-8");
+                helper.setSubject("Restablece tu contraseña - AETOS");
+                helper.setText(templates.render(EmailTemplates.PASSWORD_RESET,
+                        Map.of("resetUrl", appUrl + "/reset-password?token=" + payload.get("token"))), false);
+            }
+            case KIND_PROGRAM_REMINDER -> {
+                helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
+                helper.setSubject("🔔 Recordatorio de tu parte en AETOS - " + payload.get("fecha"));
+                // Los datos del usuario se escapan al renderizar la plantilla HTML
+                Map<String, String> values = new HashMap<>(payload);
+                values.put("parteEmoji", getParteEmoji(Objects.toString(payload.get("parte"), "")));
+                helper.setText(templates.render(EmailTemplates.PROGRAM_REMINDER, values), true);
+            }
+            default -> throw new IllegalArgumentException("Tipo de email desconocido: " + kind);
+        }
+        if (fromEmail != null && !fromEmail.trim().isEmpty()) {
+            helper.setFrom(fromEmail.trim());
+        }
+        helper.setTo(toEmail.trim());
+        return mimeMessage;
     }
 
     private String getParteEmoji(String parte) {
@@ -0,0 +1,77 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.util.Template;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plantillas de los emails (classpath:templates/email), compiladas al
+ * arrancar. Cada hilo reutiliza su propio StringBuilder para renderizar, de
+ * modo que un envío masivo no crea un buffer nuevo por mensaje.
+ */
+@Service
+public class EmailTemplates {
+
+    public static final String VERIFICATION = "verification.txt";
+    public static final String PASSWORD_RESET = "password-reset.txt";
+    public static final String PROGRAM_REMINDER = "program-reminder.html";
+
+    // Un buffer que creció por encima de esto no se conserva
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private record Compiled(Template template, LongAdder renders, LongAdder nanos) {}
+
+    private final Map<String, Compiled> templates = new LinkedHashMap<>();
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(8 * 1024));
+
+    public EmailTemplates() {
+        for (String name : new String[] {VERIFICATION, PASSWORD_RESET, PROGRAM_REMINDER}) {
+            templates.put(name, new Compiled(
+                    Template.compile(name, load(name), name.endsWith(".html")), new LongAdder(), new LongAdder()));
+        }
+    }
+
+    public String render(String name, Map<String, String> values) {
+        Compiled compiled = templates.get(name);
+        if (compiled == null) throw new IllegalArgumentException("Plantilla desconocida: " + name);
+        long start = System.nanoTime();
+        StringBuilder out = buffers.get();
+        out.setLength(0);
+        out.ensureCapacity(compiled.template().sizeHint() + 512);
+        try {
+            compiled.template().render(values, out);
+            return out.toString();
+        } finally {
+            if (out.capacity() > MAX_POOLED_CAPACITY) buffers.remove();
+            compiled.renders().increment();
+            compiled.nanos().add(System.nanoTime() - start);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        templates.forEach((name, compiled) -> {
+            long renders = compiled.renders().sum();
+            stats.put(name, Map.of(
+                    "renders", renders,
+                    "avgMicros", renders == 0 ? 0.0 : compiled.nanos().sum() / 1000.0 / renders));
+        });
+        return stats;
+    }
+
+    private static String load(String name) {
+        try (InputStream in = new ClassPathResource("templates/email/" + name).getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo cargar la plantilla " + name, e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.storage.BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché LRU en memoria de imágenes pequeñas (portadas y fotos de perfil),
+ * acotada por bytes totales y no por número de entradas.
+ *
+ * Los nombres de archivo son hashes de contenido (o UUID en los archivos
+ * antiguos), así que una clave nunca cambia de contenido: no hay expiración,
+ * solo desalojo por tamaño e invalidación cuando el blob se borra. Las
+ * lecturas concurrentes de una misma clave ausente comparten una sola carga.
+ */
+@Service
+public class ImageCache {
+
+    /** Imagen cacheada; {@code data} es null si supera el tamaño máximo por entrada. */
+    public record Entry(byte[] data, String etag, long size) {}
+
+    private final BlobStore blobStore;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    // Orden de acceso: el primero es el menos usado recientemente
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private final Map<String, CompletableFuture<Optional<Entry>>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+
+    public ImageCache(BlobStore blobStore,
+                      @Value("${image.cache.max-size:64MB}") DataSize maxBytes,
+                      @Value("${image.cache.max-entry-size:1MB}") DataSize maxEntryBytes) {
+        this.blobStore = blobStore;
+        this.maxBytes = maxBytes.toBytes();
+        this.maxEntryBytes = Math.min(maxEntryBytes.toBytes(), this.maxBytes);
+    }
+
+    // Vacío si el blob no existe (no se cachea: una portada pendiente aparecerá luego)
+    public Optional<Entry> get(String namespace, String key) throws IOException {
+        String cacheKey = namespace + "/" + key;
+        synchronized (entries) {
+            Entry cached = entries.get(cacheKey);
+            if (cached != null) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+        }
+        misses.increment();
+
+        CompletableFuture<Optional<Entry>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<Entry>> pending = loading.putIfAbsent(cacheKey, mine);
+        if (pending != null) {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof UncheckedIOException io ? io.getCause() : new IOException(e.getCause());
+            }
+        }
+        try {
+            Optional<Entry> loaded = load(namespace, key);
+            loaded.filter(entry -> entry.data() != null).ifPresent(entry -> put(cacheKey, entry));
+            mine.complete(loaded);
+            return loaded;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e instanceof IOException io ? new UncheckedIOException(io) : e);
+            throw e;
+        } finally {
+            loading.remove(cacheKey);
+        }
+    }
+
+    public boolean contains(String namespace, String key) {
+        synchronized (entries) {
+            return entries.containsKey(namespace + "/" + key);
+        }
+    }
+
+    public void invalidate(String namespace, String key) {
+        synchronized (entries) {
+            Entry removed = entries.remove(namespace + "/" + key);
+            if (removed != null) totalBytes -= removed.size();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.sum());
+        stats.put("oversized", oversized.sum());
+        return stats;
+    }
+
+    private Optional<Entry> load(String namespace, String key) throws IOException {
+        Optional<BlobStore.BlobInfo> info = blobStore.stat(namespace, key);
+        if (info.isEmpty()) return Optional.empty();
+        long size = info.get().size();
+        // El nombre es único por contenido, por eso sirve como ETag fuerte
+        String etag = "\"" + key + "\"";
+        if (size > maxEntryBytes) {
+            oversized.increment();
+            return Optional.of(new Entry(null, etag, size));
+        }
+        byte[] data;
+        try (InputStream in = blobStore.get(namespace, key)) {
+            data = in.readAllBytes();
+        }
+        return Optional.of(new Entry(data, etag, data.length));
+    }
+
+    private void put(String cacheKey, Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(cacheKey, entry);
+            if (previous != null) totalBytes -= previous.size();
+            totalBytes += entry.size();
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                totalBytes -= evicted.size();
+                evictions.increment();
+            }
+        }
+    }
+}
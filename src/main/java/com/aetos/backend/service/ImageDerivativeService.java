@@ -0,0 +1,150 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.storage.BlobStore;
+import com.aetos.backend.util.Images;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Versiones reducidas de portadas y fotos de perfil a anchos permitidos.
+ *
+ * Se generan la primera vez que se piden, decodificando el original con
+ * submuestreo, y se guardan en el espacio DERIVATIVES del BlobStore; las
+ * siguientes peticiones las sirve ImageCache. Un semáforo limita cuántas se
+ * generan a la vez para acotar la memoria, y las peticiones simultáneas de un
+ * mismo derivado esperan a una única generación.
+ */
+@Service
+public class ImageDerivativeService {
+
+    /** Blob a servir: el derivado o, si no aplica, el original. */
+    public record Variant(String namespace, String key) {}
+
+    private final BlobStore blobStore;
+    private final ImageCache imageCache;
+    private final List<Integer> widths;
+    private final Semaphore permits = new Semaphore(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> generating = new ConcurrentHashMap<>();
+
+    public ImageDerivativeService(BlobStore blobStore, ImageCache imageCache,
+                                  @Value("${image.derivatives.widths:64,128,256,512}") List<Integer> widths) {
+        this.blobStore = blobStore;
+        this.imageCache = imageCache;
+        this.widths = List.copyOf(widths);
+    }
+
+    public List<Integer> allowedWidths() {
+        return widths;
+    }
+
+    /**
+     * Variante de {@code key} con el ancho pedido. Vacío si el original no
+     * existe; IllegalArgumentException si el ancho no está permitido. Los
+     * formatos que ImageIO no decodifica (webp) se sirven como el original.
+     */
+    public Optional<Variant> variant(String namespace, String key, int width) throws IOException {
+        if (!widths.contains(width)) {
+            throw new IllegalArgumentException("Ancho no permitido, usa uno de " + widths);
+        }
+        String derivedKey = derivedKey(namespace, key, width);
+        if (derivedKey == null) {
+            return blobStore.exists(namespace, key) ? Optional.of(new Variant(namespace, key)) : Optional.empty();
+        }
+        // Camino habitual: el derivado ya está en memoria o en el almacenamiento
+        if (imageCache.contains(BlobStore.DERIVATIVES, derivedKey) || blobStore.exists(BlobStore.DERIVATIVES, derivedKey)) {
+            return Optional.of(new Variant(BlobStore.DERIVATIVES, derivedKey));
+        }
+        if (!blobStore.exists(namespace, key)) {
+            return Optional.empty();
+        }
+
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        CompletableFuture<Void> pending = generating.putIfAbsent(derivedKey, mine);
+        if (pending != null) {
+            try {
+                pending.join();
+            } catch (CompletionException e) {
+                return Optional.of(new Variant(namespace, key));
+            }
+            return Optional.of(new Variant(BlobStore.DERIVATIVES, derivedKey));
+        }
+        try {
+            generate(namespace, key, width, derivedKey);
+            mine.complete(null);
+            return Optional.of(new Variant(BlobStore.DERIVATIVES, derivedKey));
+        } catch (Exception e) {
+            // Imagen dañada, no soportada o por encima de los topes de Images: se sirve el original
+            System.err.println("Error generando derivado " + derivedKey + ": " + e.getMessage());
+            mine.completeExceptionally(e);
+            return Optional.of(new Variant(namespace, key));
+        } finally {
+            // Si un Error aborta la generación, quienes esperan no quedan colgados (no-op si ya se completó)
+            mine.completeExceptionally(new IOException("Generación de derivado abortada"));
+            generating.remove(derivedKey);
+        }
+    }
+
+    // Borra los derivados de un original eliminado
+    public void purge(String namespace, String key) {
+        for (int width : widths) {
+            String derivedKey = derivedKey(namespace, key, width);
+            if (derivedKey == null) return;
+            try {
+                imageCache.invalidate(BlobStore.DERIVATIVES, derivedKey);
+                blobStore.delete(BlobStore.DERIVATIVES, derivedKey);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error eliminando derivado " + derivedKey + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** Clave del derivado en DERIVATIVES; null si el formato no se puede reducir. */
+    public String derivedKey(String namespace, String key, int width) {
+        int dot = key.lastIndexOf('.');
+        String ext = dot >= 0 ? key.substring(dot + 1).toLowerCase() : "";
+        String base = dot >= 0 ? key.substring(0, dot) : key;
+        String format = switch (ext) {
+            case "jpg", "jpeg" -> "jpg";
+            case "png", "gif", "bmp" -> "png";
+            default -> null;
+        };
+        return format == null ? null : namespace + "-w" + width + "-" + base + "." + format;
+    }
+
+    private void generate(String namespace, String key, int width, String derivedKey) throws IOException {
+        boolean jpeg = derivedKey.endsWith(".jpg");
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Generación de derivado interrumpida");
+        }
+        Path tmp = null;
+        try (BlobStore.LocalCopy source = blobStore.localCopy(namespace, key)) {
+            tmp = blobStore.stagingDir().resolve("derivative-" + UUID.randomUUID() + (jpeg ? ".jpg" : ".png"));
+            BufferedImage decoded = Images.readForWidth(source.path().toFile(), width);
+            BufferedImage scaled = Images.scaleToWidth(decoded, width, !jpeg);
+            if (!ImageIO.write(scaled, jpeg ? "jpg" : "png", tmp.toFile())) {
+                throw new IOException("Sin escritor de imagen para " + derivedKey);
+            }
+            blobStore.putFile(BlobStore.DERIVATIVES, derivedKey, tmp, jpeg ? "image/jpeg" : "image/png");
+        } finally {
+            permits.release();
+            if (tmp != null) Files.deleteIfExists(tmp);
+        }
+    }
+}
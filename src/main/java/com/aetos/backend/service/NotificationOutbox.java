@@ -0,0 +1,67 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.model.OutboxChannel;
+import com.aetos.backend.model.OutboxMessage;
+import com.aetos.backend.model.OutboxStatus;
+import com.aetos.backend.repository.OutboxMessageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Escritura en la tabla outbox_messages.
+ *
+ * Encolar es un INSERT: si quien llama está dentro de una transacción (por
+ * ejemplo, al guardar la Notification de un recordatorio) el mensaje se
+ * confirma o se descarta junto con ella. El envío real lo hace OutboxDispatcher.
+ */
+@Service
+public class NotificationOutbox {
+
+    private static final TypeReference<Map<String, String>> PAYLOAD_TYPE = new TypeReference<>() {};
+
+    private final OutboxMessageRepository repository;
+    private final ObjectMapper objectMapper;
+
+    public NotificationOutbox(OutboxMessageRepository repository, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+    }
+
+    public OutboxMessage enqueue(OutboxChannel channel, String kind, String recipient,
+                                 Map<String, String> payload, Long notificationId) {
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage message = OutboxMessage.builder()
+                .channel(channel)
+                .kind(kind)
+                .recipient(recipient.trim())
+                .payload(toJson(payload))
+                .status(OutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .notificationId(notificationId)
+                .createdAt(now)
+                .build();
+        return repository.save(message);
+    }
+
+    public Map<String, String> payload(OutboxMessage message) {
+        try {
+            return objectMapper.readValue(message.getPayload(), PAYLOAD_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Payload inválido en mensaje " + message.getId(), e);
+        }
+    }
+
+    private String toJson(Map<String, String> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Payload no serializable", e);
+        }
+    }
+}
@@ -6,14 +6,26 @@ import com.aetos.backend.model.User;
 import com.aetos.backend.repository.NotificationRepository;
 import com.aetos.backend.repository.ProgramWeeklyRepository;
 import com.aetos.backend.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
 
 @Service
 public class NotificationScheduler {
@@ -22,163 +34,277 @@ public class NotificationScheduler {
     private final UserRepository userRepository;
     private final NotificationRepository notificationRepository;
     private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final String KIND_PROGRAM_REMINDER = "program-reminder";
+    private static final Duration REMINDER_LEAD = Duration.ofDays(2);
+
+    private record PendingReminder(LocalDateTime remindAt, ScheduledFuture<?> future) {}
+
+    // Propio: el scheduler de Spring tiene un solo hilo, compartido con todos los @Scheduled
+    private final ThreadPoolTaskScheduler taskScheduler;
+    private final Duration horizon;
+
+    // Recordatorios en memoria, solo los que vencen dentro del horizonte
+    private final Map<Long, PendingReminder> pending = new ConcurrentHashMap<>();
     
     public NotificationScheduler(
             ProgramWeeklyRepository programRepository,
             UserRepository userRepository,
             NotificationRepository notificationRepository,
-            EmailService emailService) {
+            EmailService emailService,
+            TransactionTemplate transactionTemplate,
+            @Value("${reminders.horizon:6h}") Duration horizon,
+            @Value("${reminders.threads:2}") int threads) {
         this.programRepository = programRepository;
         this.userRepository = userRepository;
         this.notificationRepository = notificationRepository;
         this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.taskScheduler = new ThreadPoolTaskScheduler();
+        this.taskScheduler.setPoolSize(Math.max(1, threads));
+        this.taskScheduler.setThreadNamePrefix("reminders-");
+        this.taskScheduler.setDaemon(true);
+        this.taskScheduler.initialize();
+        // El cargador corre cada hora: el horizonte debe cubrir al menos ese intervalo
+        this.horizon = horizon.compareTo(Duration.ofHours(2)) < 0 ? Duration.ofHours(2) : horizon;
     }
     
-    // Ejecutar cada 30 minutos
-    @Scheduled(fixedRate = 1800000) // 30 minutos en milisegundos
-    public void checkAndSendProgramReminders() {
-        System.out.println("🔔 Verificando programas para enviar recordatorios...");
-        
+    @PreDestroy
+    void shutdown() {
+        taskScheduler.shutdown();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRemindersOnStartup() {
+        // Programas futuros guardados antes de existir la columna inicio
+        List<ProgramWeekly> missingStart = programRepository.findByInicioIsNullAndWeekStartGreaterThanEqual(LocalDate.now());
+        if (!missingStart.isEmpty()) {
+            missingStart.forEach(ProgramWeekly::refreshInicio);
+            programRepository.saveAll(missingStart);
+            System.out.println("🗓️ Hora de inicio calculada para " + missingStart.size() + " programas");
+        }
+
+        // Desde ahora: incluye los recordatorios que vencieron con el servidor apagado
         LocalDateTime now = LocalDateTime.now();
-        LocalDate twoDaysLater = now.toLocalDate().plusDays(2);
-        LocalTime currentTime = now.toLocalTime();
-        
-        System.out.println("⏰ Hora actual: " + now);
-        System.out.println("📅 Buscando programas para: " + twoDaysLater);
-        
-        // Obtener todos los programas
-        List<ProgramWeekly> allPrograms = programRepository.findAll();
-        
-        for (ProgramWeekly program : allPrograms) {
-            // Verificar si el programa es en 2 días
-            if (!program.getWeekStart().equals(twoDaysLater)) {
-                continue;
+        List<ProgramWeekly> upcoming = programRepository.findByInicioBetweenOrderByInicioAsc(
+                now, now.plus(REMINDER_LEAD).plus(horizon));
+        upcoming.forEach(this::schedule);
+        System.out.println("🔔 Recordatorios programados: " + pending.size());
+    }
+
+    // Carga los recordatorios que vencen dentro del próximo horizonte (consulta por rango sobre inicio)
+    @Scheduled(initialDelay = 3600000, fixedDelay = 3600000)
+    public void loadUpcomingReminders() {
+        LocalDateTime from = LocalDateTime.now().plus(REMINDER_LEAD);
+        for (ProgramWeekly program : programRepository.findByInicioBetweenOrderByInicioAsc(from, from.plus(horizon))) {
+            schedule(program);
+        }
+    }
+
+    /**
+     * Programa (o mueve) el recordatorio de un programa recién guardado. Si
+     * ya pasó el momento del recordatorio pero el programa no empezó, se envía
+     * enseguida; si cae más allá del horizonte lo cargará loadUpcomingReminders.
+     */
+    public void reschedule(ProgramWeekly program) {
+        cancel(program.getId());
+        schedule(program);
+    }
+
+    public void cancel(Long programId) {
+        PendingReminder removed = pending.remove(programId);
+        if (removed != null) removed.future().cancel(false);
+    }
+
+    private void schedule(ProgramWeekly program) {
+        if (program.getId() == null || program.getInicio() == null) return;
+        LocalDateTime now = LocalDateTime.now();
+        if (!program.getInicio().isAfter(now)) return;
+        LocalDateTime remindAt = program.getInicio().minus(REMINDER_LEAD);
+        if (remindAt.isAfter(now.plus(horizon))) return;
+
+        Long programId = program.getId();
+        if (!remindAt.isAfter(now)) {
+            // Ya pasó la hora del recordatorio pero el programa no empezó: se envía enseguida
+            cancel(programId);
+            taskScheduler.schedule(() -> fire(programId, remindAt), Instant.now());
+            return;
+        }
+        Instant when = remindAt.atZone(ZoneId.systemDefault()).toInstant();
+        pending.compute(programId, (id, previous) -> {
+            if (previous != null) {
+                if (previous.remindAt().equals(remindAt)) return previous;
+                previous.future().cancel(false);
             }
-            
-            // Parsear hora del programa
-            String[] timeParts = program.getHora().split(":");
-            int programHour = Integer.parseInt(timeParts[0]);
-            int programMinute = Integer.parseInt(timeParts[1]);
-            LocalTime programTime = LocalTime.of(programHour, programMinute);
-            
-            // Verificar si la hora coincide (con margen de 30 minutos)
-            long minutesDiff = Math.abs(java.time.Duration.between(currentTime, programTime).toMinutes());
-            
-            if (minutesDiff > 30) {
-                continue; // No es el momento de enviar notificación para este programa
+            return new PendingReminder(remindAt, taskScheduler.schedule(() -> fire(programId, remindAt), when));
+        });
+    }
+
+    private void fire(Long programId, LocalDateTime remindAt) {
+        pending.computeIfPresent(programId, (id, current) -> current.remindAt().equals(remindAt) ? null : current);
+        try {
+            // Se relee el programa: pudo cambiar de hora en otra instancia después de programarlo
+            ProgramWeekly program = programRepository.findById(programId).orElse(null);
+            LocalDateTime now = LocalDateTime.now();
+            if (program == null || program.getInicio() == null || !program.getInicio().isAfter(now)
+                    || program.getInicio().minus(REMINDER_LEAD).isAfter(now.plusMinutes(1))) {
+                return;
             }
-            
+            System.out.println("🔔 Enviando recordatorios del programa " + program.getWeekStart() + " " + program.getHora());
+            remind(List.of(program));
+        } catch (Exception e) {
+            System.err.println("Error enviando recordatorios del programa " + programId + ": " + e.getMessage());
+        }
+    }
+
+    private void remind(List<ProgramWeekly> duePrograms) {
+        // Responsables de todos los programas encontrados, resueltos en una sola consulta
+        Map<Long, Set<String>> responsablesPorPrograma = new HashMap<>();
+        Set<String> keys = new HashSet<>();
+        for (ProgramWeekly program : duePrograms) {
+            Set<String> responsables = responsables(program);
+            responsablesPorPrograma.put(program.getId(), responsables);
+            responsables.forEach(nombre -> keys.add(normalizeKey(nombre)));
+        }
+        Map<String, User> usersByKey = keys.isEmpty() ? Map.of() : indexUsers(userRepository.findByResponsableKeys(keys));
+
+        for (ProgramWeekly program : duePrograms) {
             System.out.println("📋 Programa encontrado: " + program.getWeekStart() + " " + program.getHora());
-            
-            // Recopilar todos los responsables
-            Set<String> responsables = new HashSet<>();
-            if (program.getResponsableConfraternizacion() != null && !program.getResponsableConfraternizacion().isEmpty()) {
-                responsables.add(program.getResponsableConfraternizacion());
-            }
-            if (program.getResponsableDinamica() != null && !program.getResponsableDinamica().isEmpty()) {
-                responsables.add(program.getResponsableDinamica());
-            }
-            if (program.getResponsableEspecial() != null && !program.getResponsableEspecial().isEmpty()) {
-                responsables.add(program.getResponsableEspecial());
-            }
-            if (program.getResponsableOracionIntercesora() != null && !program.getResponsableOracionIntercesora().isEmpty()) {
-                responsables.add(program.getResponsableOracionIntercesora());
-            }
-            if (program.getResponsableTema() != null && !program.getResponsableTema().isEmpty()) {
-                responsables.add(program.getResponsableTema());
-            }
-            
+
+            Set<String> responsables = responsablesPorPrograma.get(program.getId());
             if (responsables.isEmpty()) {
                 System.out.println("⚠️ No hay responsables asignados");
                 continue;
             }
-            
+
             System.out.println("👥 Responsables: " + responsables);
-            
-            // Enviar notificación a cada responsable
+
+            Map<String, User> destinatarios = new LinkedHashMap<>();
             for (String nombreResponsable : responsables) {
-                sendReminderToResponsible(program, nombreResponsable);
+                User user = usersByKey.get(normalizeKey(nombreResponsable));
+                if (user == null) {
+                    System.out.println("⚠️ Usuario no encontrado: " + nombreResponsable);
+                    continue;
+                }
+                destinatarios.put(nombreResponsable, user);
+            }
+            if (destinatarios.isEmpty()) {
+                continue;
             }
+
+            // Verificar a quién ya se le envió el recordatorio de este programa
+            Set<Long> notified = new HashSet<>(notificationRepository.findNotifiedUserIds(
+                    program.getId(), KIND_PROGRAM_REMINDER,
+                    destinatarios.values().stream().map(User::getId).collect(Collectors.toSet())));
+
+            // Enviar notificación a cada responsable
+            destinatarios.forEach((nombreResponsable, user) -> {
+                if (!notified.add(user.getId())) {
+                    System.out.println("ℹ️ Notificación ya enviada a " + nombreResponsable);
+                    return;
+                }
+                sendReminderToResponsible(program, nombreResponsable, user);
+            });
         }
     }
-    
-    private void sendReminderToResponsible(ProgramWeekly program, String nombreResponsable) {
-        // Buscar usuario por nombre o email
-        List<User> users = userRepository.findAll().stream()
-            .filter(u -> {
-                String fullName = u.getNombre() + " " + u.getApellidos();
-                return fullName.trim().equalsIgnoreCase(nombreResponsable.trim()) ||
-                       u.getNombre().trim().equalsIgnoreCase(nombreResponsable.trim()) ||
-                       (u.getEmail() != null && u.getEmail().trim().equalsIgnoreCase(nombreResponsable.trim()));
-            })
-            .toList();
-        
-        if (users.isEmpty()) {
-            System.out.println("⚠️ Usuario no encontrado: " + nombreResponsable);
-            return;
-        }
-        
-        User user = users.get(0);
+
+    private void sendReminderToResponsible(ProgramWeekly program, String nombreResponsable, User user) {
         System.out.println("✅ Usuario encontrado: " + user.getNombre() + " (" + user.getEmail() + ")");
-        
-        // Verificar si ya se envió notificación para este programa y usuario
-        List<Notification> existingNotifications = notificationRepository.findAll().stream()
-            .filter(n -> n.getUserId().equals(user.getId()) && 
-                        n.getMessage().contains(program.getWeekStart().toString()) &&
-                        n.getMessage().contains(program.getHora()))
-            .toList();
-        
-        if (!existingNotifications.isEmpty()) {
-            System.out.println("ℹ️ Notificación ya enviada a " + nombreResponsable);
-            return;
-        }
-        
+
+        boolean hasEmail = user.getEmail() != null && !user.getEmail().isEmpty();
+
         // Determinar qué parte tiene asignada
         String parte = determinarParte(program, nombreResponsable);
-        
+
+        // Crear mensaje para la notificación en el sistema
+        String mensaje = crearMensajeRecordatorio(program, nombreResponsable, parte);
+
         // Formatear fecha en español
         DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("EEEE, d 'de' MMMM", new Locale("es", "PE"));
         String fechaFormateada = program.getWeekStart().format(dateFormatter);
-        
-        // Enviar Email
-        boolean sent = false;
-        if (user.getEmail() != null && !user.getEmail().isEmpty()) {
-            String lugarNombre = program.getLocation() != null ? program.getLocation().getName() : null;
-            String lugarDireccion = program.getLocation() != null ? program.getLocation().getAddress() : null;
-            
-            emailService.sendProgramReminderEmail(
-                user.getEmail(),
-                nombreResponsable,
-                parte,
-                fechaFormateada,
-                program.getHora(),
-                program.getHoraFin(),
-                lugarNombre,
-                lugarDireccion
-            );
-            sent = true;
-            System.out.println("📧 Email enviado a " + user.getEmail());
-        } else {
-            System.out.println("⚠️ Usuario " + nombreResponsable + " no tiene email registrado");
-        }
-        
-        // Crear mensaje para la notificación en el sistema
-        String mensaje = crearMensajeRecordatorio(program, nombreResponsable, parte);
-        
-        // Guardar notificación en la base de datos
+
         Notification notification = Notification.builder()
             .userId(user.getId())
+            .programId(program.getId())
+            .kind(KIND_PROGRAM_REMINDER)
+            .title("Recordatorio de programa")
             .message(mensaje)
             .read(false)
             .createdAt(LocalDateTime.now())
-            .type(sent ? "email" : "system")
+            .type(hasEmail ? "email" : "system")
             .build();
-        
-        notificationRepository.save(notification);
-        
+
+        // Notificación y email (outbox) en la misma transacción: o quedan ambos o ninguno.
+        // La restricción única (programa, usuario, tipo) evita el duplicado si otra instancia
+        // procesó el mismo programa
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                notificationRepository.save(notification);
+                if (hasEmail) {
+                    String lugarNombre = program.getLocation() != null ? program.getLocation().getName() : null;
+                    String lugarDireccion = program.getLocation() != null ? program.getLocation().getAddress() : null;
+
+                    emailService.sendProgramReminderEmail(
+                        user.getEmail(),
+                        nombreResponsable,
+                        parte,
+                        fechaFormateada,
+                        program.getHora(),
+                        program.getHoraFin(),
+                        lugarNombre,
+                        lugarDireccion,
+                        notification.getId()
+                    );
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            System.out.println("ℹ️ Notificación ya enviada a " + nombreResponsable);
+            return;
+        }
+
+        if (hasEmail) {
+            System.out.println("📧 Email encolado para " + user.getEmail());
+        } else {
+            System.out.println("⚠️ Usuario " + nombreResponsable + " no tiene email registrado");
+        }
+
         System.out.println("✅ Notificación creada para " + nombreResponsable);
     }
-    
+
+    // Recopilar todos los responsables
+    private Set<String> responsables(ProgramWeekly program) {
+        Set<String> responsables = new LinkedHashSet<>();
+        for (String nombre : List.of(
+                Objects.toString(program.getResponsableConfraternizacion(), ""),
+                Objects.toString(program.getResponsableDinamica(), ""),
+                Objects.toString(program.getResponsableEspecial(), ""),
+                Objects.toString(program.getResponsableOracionIntercesora(), ""),
+                Objects.toString(program.getResponsableTema(), ""))) {
+            if (!nombre.isEmpty()) {
+                responsables.add(nombre);
+            }
+        }
+        return responsables;
+    }
+
+    // Nombre completo, nombre o email -> usuario; con varios candidatos gana el de menor id
+    private Map<String, User> indexUsers(List<User> users) {
+        Map<String, User> byKey = new HashMap<>();
+        for (User user : users) {
+            byKey.putIfAbsent(normalizeKey(user.getNombre() + " " + user.getApellidos()), user);
+            byKey.putIfAbsent(normalizeKey(user.getNombre()), user);
+            if (user.getEmail() != null) {
+                byKey.putIfAbsent(normalizeKey(user.getEmail()), user);
+            }
+        }
+        return byKey;
+    }
+
+    private static String normalizeKey(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
     private String determinarParte(ProgramWeekly program, String nombreResponsable) {
         if (nombreResponsable.equalsIgnoreCase(program.getResponsableConfraternizacion())) {
             return "Confraternización 🎉";
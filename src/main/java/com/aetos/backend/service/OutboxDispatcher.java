@@ -0,0 +1,257 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.model.OutboxChannel;
+import com.aetos.backend.model.OutboxMessage;
+import com.aetos.backend.model.OutboxStatus;
+import com.aetos.backend.repository.OutboxMessageRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Envía los mensajes de outbox_messages.
+ *
+ * Cada ciclo toma lotes de mensajes vencidos con FOR UPDATE SKIP LOCKED (varias
+ * instancias no se pisan) y los marca SENDING con un plazo; el bloqueo se
+ * suelta antes de enviar. Cada canal tiene su propio pool acotado, así un SMTP
+ * lento no frena WhatsApp y viceversa: solo se toman los mensajes que los
+ * hilos del canal pueden empezar enseguida, el resto espera en la tabla. Antes
+ * de cada envío se renueva el plazo comprobando la versión de la fila, así un
+ * mensaje que otro despachador volvió a tomar no se envía dos veces. Los emails se
+ * entregan en grupos, cada uno por una conexión de SmtpConnectionPool. Un fallo
+ * reprograma el mensaje con backoff exponencial; si la instancia cae a mitad
+ * de un envío, el mensaje se vuelve a tomar cuando vence el plazo.
+ */
+@Service
+public class OutboxDispatcher {
+
+    private final OutboxMessageRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationOutbox outbox;
+    private final EmailService emailService;
+    private final WhatsAppService whatsAppService;
+    private final Map<OutboxChannel, ThreadPoolExecutor> workers = new EnumMap<>(OutboxChannel.class);
+
+    private final int batchSize;
+    private final int emailGroupSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+    private final Duration retention;
+
+    public OutboxDispatcher(OutboxMessageRepository repository,
+                            TransactionTemplate transactionTemplate,
+                            NotificationOutbox outbox,
+                            EmailService emailService,
+                            WhatsAppService whatsAppService,
+                            @Value("${outbox.batch-size:50}") int batchSize,
+                            @Value("${mail.pool.batch-size:20}") int emailGroupSize,
+                            @Value("${outbox.max-attempts:8}") int maxAttempts,
+                            @Value("${outbox.backoff.initial:30s}") Duration initialBackoff,
+                            @Value("${outbox.backoff.max:1h}") Duration maxBackoff,
+                            @Value("${outbox.lease:5m}") Duration lease,
+                            @Value("${outbox.retention:7d}") Duration retention,
+                            @Value("${outbox.email.workers:4}") int emailWorkers,
+                            @Value("${outbox.whatsapp.workers:2}") int whatsappWorkers) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.outbox = outbox;
+        this.emailService = emailService;
+        this.whatsAppService = whatsAppService;
+        this.batchSize = batchSize;
+        this.emailGroupSize = Math.max(1, emailGroupSize);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.lease = lease;
+        this.retention = retention;
+        workers.put(OutboxChannel.EMAIL, pool("outbox-email", emailWorkers));
+        workers.put(OutboxChannel.WHATSAPP, pool("outbox-whatsapp", whatsappWorkers));
+    }
+
+    @Scheduled(initialDelay = 10000, fixedDelayString = "${outbox.poll-interval:2000}")
+    public void dispatch() {
+        for (Map.Entry<OutboxChannel, ThreadPoolExecutor> entry : workers.entrySet()) {
+            ThreadPoolExecutor pool = entry.getValue();
+            OutboxChannel channel = entry.getKey();
+            // Emails en grupos por conexión SMTP; WhatsApp de uno en uno
+            int groupSize = channel == OutboxChannel.EMAIL ? emailGroupSize : 1;
+            // Solo se toma lo que los hilos pueden empezar enseguida (uno en curso y uno en cola por hilo);
+            // el resto espera en la tabla sin consumir plazo
+            int freeSlots = pool.getMaximumPoolSize() * 2 - pool.getActiveCount() - pool.getQueue().size();
+            int capacity = (int) Math.min(batchSize, (long) Math.max(0, freeSlots) * groupSize);
+            if (capacity == 0) continue;
+            List<OutboxMessage> claimed = claim(channel, capacity);
+            for (int i = 0; i < claimed.size(); i += groupSize) {
+                List<OutboxMessage> group = claimed.subList(i, Math.min(i + groupSize, claimed.size()));
+                try {
+                    pool.execute(() -> deliver(channel, group));
+                } catch (RejectedExecutionException e) {
+                    group.forEach(message -> reschedule(message, LocalDateTime.now()));
+                }
+            }
+        }
+    }
+
+    // Borra los mensajes enviados más antiguos que la retención
+    @Scheduled(initialDelay = 600000, fixedDelay = 21600000)
+    public void purgeSent() {
+        Integer deleted = transactionTemplate.execute(status ->
+                repository.deleteByStatusAndSentAtBefore(OutboxStatus.SENT, LocalDateTime.now().minus(retention)));
+        if (deleted != null && deleted > 0) {
+            System.out.println("🧹 Mensajes enviados eliminados del outbox: " + deleted);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        for (Object[] row : repository.countByStatus()) {
+            byStatus.put(String.valueOf(row[0]), ((Number) row[1]).longValue());
+        }
+        stats.put("messages", byStatus);
+        workers.forEach((channel, pool) -> stats.put(channel.name().toLowerCase(), Map.of(
+                "active", pool.getActiveCount(),
+                "queued", pool.getQueue().size())));
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Los mensajes en curso quedan SENDING y se retoman al vencer el plazo
+        workers.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    private List<OutboxMessage> claim(OutboxChannel channel, int limit) {
+        List<OutboxMessage> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxMessage> due = repository.lockDue(channel.name(), now, limit);
+            for (OutboxMessage message : due) {
+                message.setStatus(OutboxStatus.SENDING);
+                message.setNextAttemptAt(now.plus(lease));
+            }
+            return repository.saveAll(due);
+        });
+        return claimed != null ? claimed : List.of();
+    }
+
+    private void deliver(OutboxChannel channel, List<OutboxMessage> group) {
+        switch (channel) {
+            case EMAIL -> emailService.deliverBatch(group, this::renewLease, outbox::payload, this::record);
+            case WHATSAPP -> {
+                for (OutboxMessage message : group) {
+                    if (!renewLease(message)) continue;
+                    Exception error = null;
+                    try {
+                        whatsAppService.deliver(message.getRecipient(), outbox.payload(message).get("body"));
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                    record(message, error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renueva el plazo justo antes de enviar. Si el mensaje esperó tanto que
+     * otro despachador lo volvió a tomar, la versión ya no coincide y se omite
+     * para no enviarlo dos veces.
+     */
+    private boolean renewLease(OutboxMessage message) {
+        LocalDateTime until = LocalDateTime.now().plus(lease);
+        Integer updated = transactionTemplate.execute(status -> repository.renewLease(
+                message.getId(), message.getVersion(), OutboxStatus.SENDING, until));
+        if (updated == null || updated == 0) {
+            System.out.println("ℹ️ Mensaje " + message.getId() + " tomado por otro despachador, se omite");
+            return false;
+        }
+        message.setVersion(message.getVersion() + 1);
+        message.setNextAttemptAt(until);
+        return true;
+    }
+
+    // Guarda el resultado de un intento: enviado, reintento con backoff o fallido
+    private void record(OutboxMessage message, Exception error) {
+        message.setAttempts(message.getAttempts() + 1);
+        if (error == null) {
+            message.setStatus(OutboxStatus.SENT);
+            message.setSentAt(LocalDateTime.now());
+            message.setLastError(null);
+        } else {
+            String text = error.getClass().getSimpleName() + ": " + error.getMessage();
+            message.setLastError(text.length() > 500 ? text.substring(0, 500) : text);
+            if (message.getAttempts() >= maxAttempts) {
+                message.setStatus(OutboxStatus.FAILED);
+                System.err.println("❌ Mensaje " + message.getId() + " (" + message.getKind() + ") descartado tras "
+                        + message.getAttempts() + " intentos: " + text);
+            } else {
+                LocalDateTime next = LocalDateTime.now().plus(backoff(message.getAttempts()));
+                message.setStatus(OutboxStatus.PENDING);
+                message.setNextAttemptAt(next);
+                System.err.println("⚠️ Error enviando mensaje " + message.getId() + ", reintento a las " + next + ": " + text);
+            }
+        }
+        try {
+            // save comprueba la versión: si otro despachador tomó el mensaje, no se pisa su estado
+            repository.save(message);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            System.err.println("Mensaje " + message.getId() + " tomado por otro despachador, no se guarda el resultado");
+        } catch (Exception e) {
+            // Sin estado guardado el mensaje se reenvía al vencer el plazo (entrega al menos una vez)
+            System.err.println("Error guardando estado del mensaje " + message.getId() + ": " + e.getMessage());
+        }
+    }
+
+    // Devuelve a la cola un mensaje tomado que no cupo en el pool
+    private void reschedule(OutboxMessage message, LocalDateTime when) {
+        message.setStatus(OutboxStatus.PENDING);
+        message.setNextAttemptAt(when);
+        try {
+            repository.save(message);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // Ya lo tomó otro despachador
+        } catch (Exception e) {
+            System.err.println("Error devolviendo mensaje " + message.getId() + " al outbox: " + e.getMessage());
+        }
+    }
+
+    // initial * 2^(intento-1), con tope y ±20% de variación para no reintentar todos a la vez
+    private Duration backoff(int attempt) {
+        long base = initialBackoff.toMillis() << Math.min(attempt - 1, 20);
+        long capped = Math.min(base, maxBackoff.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    private ThreadPoolExecutor pool(String name, int threads) {
+        int size = Math.max(1, threads);
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(size),
+                r -> {
+                    Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,92 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.model.Resource;
+import com.aetos.backend.storage.BlobStore;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Descarga de varios recursos en un ZIP generado al vuelo.
+ *
+ * Cada archivo se copia del BlobStore directo al ZipOutputStream de la
+ * respuesta, sin temporales ni buffers del tamaño del archivo. Los formatos ya
+ * comprimidos (PDF, imágenes, documentos Office modernos) se escriben con
+ * nivel 0: sin recompresión, y sin la doble lectura que exigiría STORED para
+ * calcular el CRC antes de escribir.
+ */
+@Service
+public class ResourceBundleService {
+
+    private static final Set<String> COMPRESSED_FORMATS =
+            Set.of("pdf", "png", "jpg", "jpeg", "gif", "webp", "docx", "xlsx", "pptx", "zip");
+
+    private final BlobStore blobStore;
+
+    public ResourceBundleService(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    public void writeZip(List<Resource> resources, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Set<String> usedNames = new HashSet<>();
+        for (Resource resource : resources) {
+            InputStream in;
+            try {
+                in = blobStore.get(BlobStore.RESOURCES, resource.getRutaArchivo());
+            } catch (NoSuchFileException | IllegalArgumentException e) {
+                // Archivo borrado entre la consulta y la descarga: se omite
+                System.err.println("Recurso " + resource.getId() + " sin archivo, se omite del ZIP");
+                continue;
+            }
+            try (in) {
+                String name = uniqueName(entryName(resource), usedNames);
+                zip.setLevel(COMPRESSED_FORMATS.contains(extensionOf(name)) ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+                ZipEntry entry = new ZipEntry(name);
+                if (resource.getFechaSubida() != null) {
+                    entry.setTime(resource.getFechaSubida().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                }
+                zip.putNextEntry(entry);
+                in.transferTo(zip);
+                zip.closeEntry();
+            }
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    // Nombre original sin rutas ni caracteres problemáticos en Windows
+    private static String entryName(Resource resource) {
+        String name = resource.getNombreArchivo() != null ? resource.getNombreArchivo() : resource.getRutaArchivo();
+        name = name.replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1).replaceAll("[:*?\"<>|\\p{Cntrl}]", "_").trim();
+        return name.isEmpty() || name.startsWith(".") ? "recurso-" + resource.getId() + name : name;
+    }
+
+    // "guia.pdf", "guia (2).pdf", ... para que dos recursos con el mismo nombre no choquen
+    private static String uniqueName(String name, Set<String> used) {
+        if (used.add(name.toLowerCase())) return name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+        for (int i = 2; ; i++) {
+            String candidate = base + " (" + i + ")" + ext;
+            if (used.add(candidate.toLowerCase())) return candidate;
+        }
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot + 1).toLowerCase() : "";
+    }
+}
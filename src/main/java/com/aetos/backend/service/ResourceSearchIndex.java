@@ -0,0 +1,262 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.model.Resource;
+import com.aetos.backend.repository.ResourceRepository;
+import com.aetos.backend.storage.BlobStore;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Índice de búsqueda de texto completo sobre recursos (PostgreSQL tsvector + GIN).
+ *
+ * Cada recurso tiene una fila en resource_search con dos vectores: el de
+ * metadatos (nombre con peso A, descripción y nombre de archivo con peso B),
+ * que se actualiza al subir o editar, y el del texto del PDF (peso C), que
+ * extrae un hilo en segundo plano. La columna {@code document} es la unión de
+ * ambos y es la que lleva el índice GIN. Las búsquedas se resuelven en la base
+ * con ts_rank_cd y un LIMIT, sin cargar los recursos en memoria.
+ */
+@Service
+public class ResourceSearchIndex {
+
+    public record Hit(Long id, String nombre, String descripcion, String nombreArchivo, String rutaPortada,
+                      String usuarioNombre, String usuarioEmail, LocalDateTime fechaSubida, Long tamanioBytes,
+                      String thumbnailStatus, double rank) {}
+
+    private static final String TS_CONFIG = "spanish";
+    // to_tsvector falla por encima de 1 MB; el texto del PDF se recorta antes
+    private static final int MAX_TEXT_CHARS = 300_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ResourceRepository resourceRepository;
+    private final BlobStore blobStore;
+    private final ThreadPoolExecutor executor;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    @Value("${search.pdf.max-pages:200}")
+    private int maxPages;
+
+    // unaccent es opcional: sin la extensión "oracion" no encuentra "oración"
+    private volatile String normalize = "%s";
+    private volatile boolean ready;
+
+    public ResourceSearchIndex(JdbcTemplate jdbcTemplate, ResourceRepository resourceRepository, BlobStore blobStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.resourceRepository = resourceRepository;
+        this.blobStore = blobStore;
+        this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(500), r -> {
+            Thread t = new Thread(r, "search-indexer");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // El esquema usa tipos de PostgreSQL que Hibernate no genera
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureSchema() {
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS resource_search ("
+                    + "resource_id BIGINT PRIMARY KEY REFERENCES resources(id) ON DELETE CASCADE, "
+                    + "meta_vector tsvector NOT NULL, "
+                    + "body_vector tsvector NOT NULL DEFAULT ''::tsvector, "
+                    + "document tsvector NOT NULL, "
+                    + "body_indexed BOOLEAN NOT NULL DEFAULT FALSE, "
+                    + "updated_at TIMESTAMP NOT NULL)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_resource_search_document ON resource_search USING GIN (document)");
+            try {
+                jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS unaccent");
+                normalize = "unaccent(%s)";
+            } catch (Exception e) {
+                System.out.println("⚠️ Extensión unaccent no disponible, la búsqueda distingue tildes");
+            }
+            ready = true;
+            System.out.println("✅ Índice de búsqueda de recursos listo");
+        } catch (Exception e) {
+            System.err.println("Error creando índice de búsqueda: " + e.getMessage());
+        }
+    }
+
+    // Completa la extensión de los recursos anteriores a la columna (filtro por tipo del listado)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillExtensions() {
+        try {
+            int updated = jdbcTemplate.update("UPDATE resources SET extension = lower(substring(ruta_archivo from '\\.([A-Za-z0-9]{1,10})$')) "
+                    + "WHERE extension IS NULL AND ruta_archivo ~ '\\.[A-Za-z0-9]{1,10}$'");
+            if (updated > 0) {
+                System.out.println("🗂️ Extensión completada en " + updated + " recursos");
+            }
+        } catch (Exception e) {
+            System.err.println("Error completando extensiones de recursos: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indexa los metadatos en la misma request y encola la extracción del
+     * texto. Un fallo aquí nunca rompe la subida: el barrido lo reintenta.
+     */
+    public void indexResource(Resource resource) {
+        indexMetadata(resource);
+        submitBody(resource);
+    }
+
+    // Tras editar nombre o descripción; conserva el texto ya extraído
+    public void indexMetadata(Resource resource) {
+        if (!ready) return;
+        try {
+            String meta = "setweight(to_tsvector('" + TS_CONFIG + "', " + norm("coalesce(CAST(? AS text), '')") + "), 'A') || "
+                    + "setweight(to_tsvector('" + TS_CONFIG + "', " + norm("coalesce(CAST(? AS text), '')") + "), 'B') || "
+                    + "setweight(to_tsvector('simple', " + norm("coalesce(CAST(? AS text), '')") + "), 'B')";
+            jdbcTemplate.update("WITH m AS (SELECT " + meta + " AS v) "
+                            + "INSERT INTO resource_search (resource_id, meta_vector, document, updated_at) "
+                            + "SELECT ?, m.v, m.v, now() FROM m "
+                            + "ON CONFLICT (resource_id) DO UPDATE SET meta_vector = EXCLUDED.meta_vector, "
+                            + "document = EXCLUDED.meta_vector || resource_search.body_vector, updated_at = now()",
+                    resource.getNombre(), resource.getDescripcion(), fileNameWords(resource.getNombreArchivo()),
+                    resource.getId());
+        } catch (Exception e) {
+            System.err.println("Error indexando recurso " + resource.getId() + ": " + e.getMessage());
+        }
+    }
+
+    public List<Hit> search(String query, int limit) {
+        if (!ready) return List.of();
+        String sql = "SELECT r.id, r.nombre, r.descripcion, r.nombre_archivo, r.ruta_portada, r.usuario_nombre, "
+                + "r.usuario_email, r.fecha_subida, r.tamanio_bytes, r.thumbnail_status, "
+                + "ts_rank_cd(s.document, q.query) AS rank "
+                + "FROM resource_search s "
+                + "JOIN resources r ON r.id = s.resource_id "
+                + "CROSS JOIN websearch_to_tsquery('" + TS_CONFIG + "', " + norm("CAST(? AS text)") + ") AS q(query) "
+                + "WHERE s.document @@ q.query "
+                + "ORDER BY rank DESC, r.id DESC LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, i) -> {
+            Timestamp fecha = rs.getTimestamp("fecha_subida");
+            return new Hit(
+                    rs.getLong("id"),
+                    rs.getString("nombre"),
+                    rs.getString("descripcion"),
+                    rs.getString("nombre_archivo"),
+                    rs.getString("ruta_portada"),
+                    rs.getString("usuario_nombre"),
+                    rs.getString("usuario_email"),
+                    fecha != null ? fecha.toLocalDateTime() : null,
+                    rs.getObject("tamanio_bytes", Long.class),
+                    rs.getString("thumbnail_status"),
+                    rs.getDouble("rank"));
+        }, query, limit);
+    }
+
+    // Recursos sin indexar (anteriores a la búsqueda, cola llena o reinicio)
+    @Scheduled(initialDelay = 120000, fixedDelay = 600000)
+    public void backfill() {
+        if (!ready) return;
+        List<Long> pendingIds = jdbcTemplate.queryForList(
+                "SELECT r.id FROM resources r LEFT JOIN resource_search s ON s.resource_id = r.id "
+                        + "WHERE s.resource_id IS NULL OR NOT s.body_indexed ORDER BY r.id LIMIT 50", Long.class);
+        if (pendingIds.isEmpty()) return;
+        for (Resource resource : resourceRepository.findAllById(pendingIds)) {
+            indexMetadata(resource);
+            if (!submitBody(resource)) break;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean submitBody(Resource resource) {
+        if (!ready || !inFlight.add(resource.getId())) return true;
+        try {
+            executor.execute(() -> {
+                try {
+                    indexBody(resource);
+                } finally {
+                    inFlight.remove(resource.getId());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(resource.getId());
+            return false;
+        }
+    }
+
+    private void indexBody(Resource resource) {
+        // Mismo contenido ya indexado en otro recurso: se copia el vector sin volver a leer el PDF
+        if (resource.getContentHash() != null) {
+            int copied = jdbcTemplate.update("UPDATE resource_search s SET body_vector = t.body_vector, "
+                            + "document = s.meta_vector || t.body_vector, body_indexed = TRUE, updated_at = now() "
+                            + "FROM resource_search t JOIN resources tr ON tr.id = t.resource_id "
+                            + "WHERE s.resource_id = ? AND tr.content_hash = ? AND tr.id <> ? AND t.body_indexed",
+                    resource.getId(), resource.getContentHash(), resource.getId());
+            if (copied > 0) return;
+        }
+
+        String text = "";
+        if (resource.getRutaArchivo() != null && resource.getRutaArchivo().toLowerCase().endsWith(".pdf")) {
+            try {
+                text = extractPdfText(resource.getRutaArchivo());
+            } catch (Exception e) {
+                // Se marca igual como indexado para no reintentar un PDF dañado en cada barrido
+                System.err.println("Error extrayendo texto del recurso " + resource.getId() + ": " + e.getMessage());
+            }
+        }
+        try {
+            jdbcTemplate.update("UPDATE resource_search SET body_vector = b.v, document = meta_vector || b.v, "
+                            + "body_indexed = TRUE, updated_at = now() "
+                            + "FROM (SELECT setweight(to_tsvector('" + TS_CONFIG + "', " + norm("CAST(? AS text)") + "), 'C') AS v) b "
+                            + "WHERE resource_id = ?",
+                    text, resource.getId());
+        } catch (Exception e) {
+            System.err.println("Error indexando texto del recurso " + resource.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private String extractPdfText(String key) throws IOException {
+        try (BlobStore.LocalCopy source = blobStore.localCopy(BlobStore.RESOURCES, key);
+             PDDocument document = PDDocument.load(source.path().toFile(), MemoryUsageSetting.setupTempFileOnly())) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            int pages = Math.min(document.getNumberOfPages(), maxPages);
+            // Página a página: se deja de extraer al llegar al tope de texto, sin acumular el resto del PDF
+            StringBuilder text = new StringBuilder();
+            for (int page = 1; page <= pages && text.length() < MAX_TEXT_CHARS; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                text.append(stripper.getText(document));
+            }
+            if (text.length() > MAX_TEXT_CHARS) text.setLength(MAX_TEXT_CHARS);
+            // Sin caracteres nulos (PostgreSQL no los acepta en text)
+            return text.toString().replace('\u0000', ' ');
+        }
+    }
+
+    private String norm(String expression) {
+        return String.format(normalize, expression);
+    }
+
+    // "guia_estudio-2024.pdf" -> "guia estudio 2024 pdf", para que cada parte sea un término
+    private static String fileNameWords(String fileName) {
+        return fileName == null ? null : fileName.replaceAll("[._\\-]+", " ");
+    }
+}
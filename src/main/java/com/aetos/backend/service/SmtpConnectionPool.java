@@ -0,0 +1,212 @@
+package com.aetos.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conexiones SMTP reutilizables.
+ *
+ * JavaMailSender abre y cierra una sesión SMTP (con su STARTTLS y AUTH) por
+ * cada send. Aquí se mantienen hasta {@code mail.pool.size} Transport
+ * conectados que se prestan a los hilos del outbox: cada uno envía un lote de
+ * mensajes por la misma conexión. Una conexión se recicla tras
+ * {@code mail.pool.max-messages-per-connection} mensajes (muchos servidores
+ * cortan pasado un límite), se cierra si lleva inactiva más de
+ * {@code mail.pool.max-idle} y se valida con NOOP antes de reutilizarla si
+ * estuvo parada unos segundos.
+ */
+@Service
+public class SmtpConnectionPool {
+
+    // Por debajo de esto no se valida con NOOP: la conexión acaba de usarse
+    private static final long VALIDATE_AFTER_MILLIS = 5000;
+
+    private final JavaMailSender mailSender;
+    private final int maxMessagesPerConnection;
+    private final long maxIdleMillis;
+    private final Duration borrowTimeout;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder recycled = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+
+    public SmtpConnectionPool(JavaMailSender mailSender,
+                              @Value("${mail.pool.size:${outbox.email.workers:4}}") int size,
+                              @Value("${mail.pool.max-messages-per-connection:100}") int maxMessagesPerConnection,
+                              @Value("${mail.pool.max-idle:60s}") Duration maxIdle,
+                              @Value("${mail.pool.borrow-timeout:30s}") Duration borrowTimeout) {
+        this.mailSender = mailSender;
+        this.maxMessagesPerConnection = Math.max(1, maxMessagesPerConnection);
+        this.maxIdleMillis = maxIdle.toMillis();
+        this.borrowTimeout = borrowTimeout;
+        this.permits = new Semaphore(Math.max(1, size));
+    }
+
+    /** Conexión prestada; close() la devuelve al pool (o la cierra si quedó inservible). */
+    public final class Connection implements AutoCloseable {
+        private final Transport transport;
+        private int messages;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean broken;
+        private boolean returned;
+
+        private Connection(Transport transport) {
+            this.transport = transport;
+        }
+
+        public void send(MimeMessage message) throws MessagingException {
+            if (message.getSentDate() == null) message.setSentDate(new Date());
+            message.saveChanges();
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+                messages++;
+                sent.increment();
+            } catch (SendFailedException e) {
+                // Destinatario rechazado: la conexión sigue sirviendo
+                throw e;
+            } catch (MessagingException | RuntimeException e) {
+                broken = true;
+                throw e;
+            } finally {
+                lastUsed = System.currentTimeMillis();
+            }
+        }
+
+        // Caída o en el tope de mensajes: hay que devolverla y pedir otra antes del próximo envío
+        public boolean isSpent() {
+            return broken || messages >= maxMessagesPerConnection;
+        }
+
+        @Override
+        public void close() {
+            if (returned) return;
+            returned = true;
+            release(this);
+        }
+    }
+
+    /**
+     * Presta una conexión abierta, reutilizando una libre si hay y está sana.
+     * Espera hasta {@code mail.pool.borrow-timeout} si todas están en uso.
+     */
+    public Connection borrow() throws MessagingException {
+        try {
+            if (!permits.tryAcquire(borrowTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("No hay conexiones SMTP libres");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Espera de conexión SMTP interrumpida");
+        }
+        try {
+            Connection candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                candidate.returned = false;
+                if (isReusable(candidate)) return candidate;
+                closeQuietly(candidate);
+            }
+            return open();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Cierra las conexiones que llevan demasiado tiempo sin usarse
+    @Scheduled(initialDelay = 60000, fixedDelay = 30000)
+    public void evictIdle() {
+        List<Connection> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        idle.removeIf(c -> {
+            boolean old = now - c.lastUsed > maxIdleMillis;
+            if (old) expired.add(c);
+            return old;
+        });
+        expired.forEach(this::closeQuietly);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("idle", idle.size());
+        stats.put("available", permits.availablePermits());
+        stats.put("opened", opened.sum());
+        stats.put("recycled", recycled.sum());
+        stats.put("sent", sent.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        Connection c;
+        while ((c = idle.pollFirst()) != null) {
+            closeQuietly(c);
+        }
+    }
+
+    private boolean isReusable(Connection c) {
+        if (c.isSpent()) return false;
+        long idleFor = System.currentTimeMillis() - c.lastUsed;
+        if (idleFor > maxIdleMillis) return false;
+        // isConnected() envía un NOOP; solo vale la pena si la conexión estuvo parada
+        return idleFor < VALIDATE_AFTER_MILLIS || c.transport.isConnected();
+    }
+
+    private Connection open() throws MessagingException {
+        if (!(mailSender instanceof JavaMailSenderImpl impl)) {
+            throw new MessagingException("El pool SMTP requiere JavaMailSenderImpl");
+        }
+        Transport transport = impl.getSession().getTransport(impl.getProtocol() != null ? impl.getProtocol() : "smtp");
+        String username = impl.getUsername();
+        String password = impl.getPassword();
+        if ("".equals(username)) {
+            username = null;
+            password = null;
+        }
+        transport.connect(impl.getHost(), impl.getPort(), username, password);
+        opened.increment();
+        return new Connection(transport);
+    }
+
+    private void release(Connection c) {
+        try {
+            if (c.isSpent()) {
+                closeQuietly(c);
+            } else {
+                // Al frente: se reutiliza primero la más reciente y las demás envejecen hasta cerrarse
+                idle.offerFirst(c);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void closeQuietly(Connection c) {
+        recycled.increment();
+        try {
+            c.transport.close();
+        } catch (MessagingException e) {
+            // La conexión ya estaba cerrada por el servidor
+        }
+    }
+}
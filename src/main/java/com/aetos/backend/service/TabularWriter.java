@@ -0,0 +1,165 @@
+package com.aetos.backend.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Escritor de tablas fila por fila para exportaciones.
+ *
+ * Ninguna implementación retiene filas: CSV escribe cada línea directamente
+ * y XLSX genera el XML de la hoja dentro de un ZipOutputStream a medida que
+ * llegan las filas, de modo que la memoria usada no depende del tamaño del
+ * reporte.
+ */
+public interface TabularWriter extends AutoCloseable {
+
+    void row(Object... cells) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    static TabularWriter csv(OutputStream out) throws IOException {
+        return new Csv(out);
+    }
+
+    static TabularWriter xlsx(OutputStream out, String sheetName) throws IOException {
+        return new Xlsx(out, sheetName);
+    }
+
+    final class Csv implements TabularWriter {
+        private final Writer writer;
+
+        private Csv(OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            // BOM para que Excel detecte UTF-8 (tildes y eñes)
+            writer.write('\uFEFF');
+        }
+
+        @Override
+        public void row(Object... cells) throws IOException {
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write(escape(cells[i]));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+
+        private static String escape(Object cell) {
+            if (cell == null) return "";
+            if (cell instanceof Number) return cell.toString();
+            String value = cell instanceof Boolean b ? (b ? "Sí" : "No") : cell.toString();
+            // Evita que una hoja de cálculo interprete el texto como fórmula
+            if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0) {
+                value = "'" + value;
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                value = "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            return value;
+        }
+    }
+
+    final class Xlsx implements TabularWriter {
+        private final ZipOutputStream zip;
+        private final Writer writer;
+        private final String sheetName;
+
+        private Xlsx(OutputStream out, String sheetName) throws IOException {
+            this.zip = new ZipOutputStream(out);
+            this.writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+            this.sheetName = sheetName;
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        }
+
+        @Override
+        public void row(Object... cells) throws IOException {
+            writer.write("<row>");
+            for (Object cell : cells) {
+                if (cell == null) {
+                    writer.write("<c/>");
+                } else if (cell instanceof Number) {
+                    writer.write("<c><v>");
+                    writer.write(cell.toString());
+                    writer.write("</v></c>");
+                } else {
+                    String value = cell instanceof Boolean b ? (b ? "Sí" : "No") : cell.toString();
+                    writer.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+                    writer.write(escapeXml(value));
+                    writer.write("</t></is></c>");
+                }
+            }
+            writer.write("</row>");
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.write("</sheetData></worksheet>");
+            writer.flush();
+            zip.closeEntry();
+
+            part("[Content_Types].xml",
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                    + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                    + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                    + "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+                    + "</Types>");
+            part("_rels/.rels",
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            part("xl/workbook.xml",
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" "
+                    + "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+                    + "<sheets><sheet name=\"" + escapeXml(sheetName) + "\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+                    + "</workbook>");
+            part("xl/_rels/workbook.xml.rels",
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+                    + "</Relationships>");
+            zip.finish();
+        }
+
+        private void part(String name, String content) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            writer.write(content);
+            writer.flush();
+            zip.closeEntry();
+        }
+
+        private static String escapeXml(String value) {
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '&' -> sb.append("&amp;");
+                    case '<' -> sb.append("&lt;");
+                    case '>' -> sb.append("&gt;");
+                    case '"' -> sb.append("&quot;");
+                    default -> {
+                        // Caracteres de control no permitidos en XML 1.0
+                        if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') sb.append(c);
+                    }
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.model.Resource;
+import com.aetos.backend.model.ThumbnailStatus;
+import com.aetos.backend.repository.ResourceRepository;
+import com.aetos.backend.storage.BlobStore;
+import com.aetos.backend.util.Images;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generación de portadas fuera del hilo de la request.
+ *
+ * Las subidas encolan un trabajo y responden de inmediato con el recurso en
+ * estado PENDING; un pool acotado al número de núcleos renderiza la portada y
+ * la publica en el BlobStore. Los PDF se abren con MemoryUsageSetting de
+ * solo archivo temporal y se renderizan a un DPI bajo configurable, que se
+ * reduce si la página supera el tope de píxeles, de modo que la memoria por
+ * trabajo queda acotada antes de renderizar. Si la cola está llena el recurso queda
+ * PENDING y lo retoma el barrido periódico. Un fallo no publica nada bajo la
+ * clave de la portada (se sirve inmutable): el recurso queda FAILED, se sirve
+ * la genérica en memoria y el barrido lo reintenta hasta
+ * {@code thumbnail.max-attempts} veces.
+ */
+@Service
+public class ThumbnailService {
+
+    private static final int THUMBNAIL_WIDTH = 300;
+    // Tope de píxeles al renderizar la página de un PDF (~16 MB en RGB); un MediaBox enorme baja el DPI
+    private static final long MAX_RENDER_PIXELS = 4_000_000L;
+
+    private final ResourceRepository resourceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlobStore blobStore;
+
+    @Value("${thumbnail.pdf.dpi:72}")
+    private float pdfDpi;
+
+    @Value("${thumbnail.max-attempts:3}")
+    private int maxAttempts;
+
+    private final ThreadPoolExecutor executor;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile byte[] placeholderPng;
+
+    public ThumbnailService(ResourceRepository resourceRepository,
+                            TransactionTemplate transactionTemplate,
+                            BlobStore blobStore,
+                            @Value("${thumbnail.queue.capacity:200}") int queueCapacity) {
+        this.resourceRepository = resourceRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.blobStore = blobStore;
+
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "thumbnail-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Encola la generación de la portada; false si la cola está llena (lo retomará el barrido)
+    public boolean submit(Resource resource) {
+        if (!inFlight.add(resource.getId())) return true;
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(resource);
+                } finally {
+                    inFlight.remove(resource.getId());
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(resource.getId());
+            System.out.println("⏳ Cola de portadas llena, recurso " + resource.getId() + " queda pendiente");
+            return false;
+        }
+    }
+
+    // Retoma portadas pendientes (cola llena o reinicio del servidor) y reintenta las fallidas
+    @Scheduled(initialDelay = 60000, fixedDelay = 300000)
+    public void resumePending() {
+        List<Resource> pending = resourceRepository.findTop50ByThumbnailStatusOrderByIdAsc(ThumbnailStatus.PENDING);
+        for (Resource resource : pending) {
+            if (!submit(resource)) return;
+        }
+        List<Resource> failed = resourceRepository.findThumbnailRetries(ThumbnailStatus.FAILED, maxAttempts, PageRequest.of(0, 50));
+        for (Resource resource : failed) {
+            if (!submit(resource)) return;
+        }
+    }
+
+    // Portada genérica compartida, en memoria, mientras la real no está lista
+    public byte[] placeholderPng() throws IOException {
+        byte[] cached = placeholderPng;
+        if (cached == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(renderPlaceholder("FILE"), "PNG", out);
+            cached = out.toByteArray();
+            placeholderPng = cached;
+        }
+        return cached;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void generate(Resource resource) {
+        String ext = extensionOf(resource.getRutaArchivo());
+        String target = resource.getRutaPortada();
+        try {
+            BufferedImage image;
+            boolean renderable = "pdf".equals(ext) || List.of("png", "jpg", "jpeg", "gif", "webp").contains(ext);
+            if (renderable) {
+                try (BlobStore.LocalCopy source = blobStore.localCopy(BlobStore.RESOURCES, resource.getRutaArchivo())) {
+                    if ("pdf".equals(ext)) {
+                        image = renderPdf(source.path().toFile());
+                    } else {
+                        // Decodificación submuestreada: una foto enorme no se carga completa
+                        image = Images.readForWidth(source.path().toFile(), THUMBNAIL_WIDTH);
+                    }
+                }
+            } else {
+                image = renderPlaceholder(ext.toUpperCase());
+            }
+            publish(Images.scaleToWidth(image, THUMBNAIL_WIDTH, true), target);
+            transactionTemplate.executeWithoutResult(tx -> resourceRepository.updateThumbnailStatus(resource.getId(), ThumbnailStatus.READY));
+            System.out.println("Thumbnail generado exitosamente: " + target);
+        } catch (Exception e) {
+            // Nada se publica bajo la clave: la genérica se sirve desde memoria sin caché
+            System.err.println("Error generando thumbnail del recurso " + resource.getId() + ": " + e.getMessage());
+            transactionTemplate.executeWithoutResult(tx -> resourceRepository.recordThumbnailFailure(resource.getId(), ThumbnailStatus.FAILED));
+        }
+    }
+
+    private BufferedImage renderPdf(File pdf) throws IOException {
+        try (PDDocument document = PDDocument.load(pdf, MemoryUsageSetting.setupTempFileOnly())) {
+            if (document.getNumberOfPages() == 0) throw new IOException("PDF sin páginas");
+            // El tamaño se conoce antes de renderizar: se limita el DPI en vez de reservar un ráster gigante
+            PDRectangle box = document.getPage(0).getCropBox();
+            double pixels = (box.getWidth() / 72.0 * pdfDpi) * (box.getHeight() / 72.0 * pdfDpi);
+            float dpi = pixels > MAX_RENDER_PIXELS
+                    ? (float) (pdfDpi * Math.sqrt(MAX_RENDER_PIXELS / pixels))
+                    : pdfDpi;
+            if (!(dpi > 0.5f)) throw new IOException("Página de PDF demasiado grande para la portada");
+            return new PDFRenderer(document).renderImageWithDPI(0, dpi, ImageType.RGB);
+        }
+    }
+
+    private static BufferedImage renderPlaceholder(String label) {
+        int w = 300, h = 400;
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        java.awt.Graphics2D g = out.createGraphics();
+        g.setColor(new java.awt.Color(59, 130, 246));
+        g.fillRect(0, 0, w, h);
+        g.setColor(java.awt.Color.WHITE);
+        g.setFont(new java.awt.Font("SansSerif", java.awt.Font.BOLD, 92));
+        java.awt.FontMetrics fm = g.getFontMetrics();
+        int sw = fm.stringWidth(label);
+        int x = Math.max(10, (w - sw) / 2);
+        int y = h / 2 + fm.getAscent() / 2;
+        g.drawString(label, x, y);
+        g.dispose();
+        return out;
+    }
+
+    // Se escribe a un temporal y se publica entero, así nunca se sirve una portada a medio escribir
+    private void publish(BufferedImage image, String key) throws IOException {
+        Path tmp = blobStore.stagingDir().resolve("thumb-" + UUID.randomUUID() + ".png");
+        try {
+            ImageIO.write(image, "PNG", tmp.toFile());
+            blobStore.putFile(BlobStore.THUMBNAILS, key, tmp, "image/png");
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String extensionOf(String filename) {
+        if (filename == null) return "";
+        int i = filename.lastIndexOf('.');
+        return i >= 0 ? filename.substring(i + 1).toLowerCase() : "";
+    }
+}
@@ -1,11 +1,14 @@
 package com.aetos.backend.service;
 
+import com.aetos.backend.model.OutboxChannel;
 import com.twilio.Twilio;
 import com.twilio.rest.api.v2010.account.Message;
 import com.twilio.type.PhoneNumber;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+
 @Service
 public class WhatsAppService {
     
@@ -18,45 +21,62 @@ public class WhatsAppService {
     @Value("${twilio.whatsapp.from}")
     private String fromNumber;
     
-    private boolean initialized = false;
+    private final NotificationOutbox outbox;
+    
+    private volatile boolean initialized = false;
     
-    private void initialize() {
-        if (!initialized && accountSid != null && !accountSid.startsWith("YOUR_")) {
+    private synchronized void initialize() {
+        if (!initialized && isConfigured()) {
             Twilio.init(accountSid, authToken);
             initialized = true;
         }
     }
     
+    public WhatsAppService(NotificationOutbox outbox) {
+        this.outbox = outbox;
+    }
+    
+    // Encola el mensaje en outbox_messages; false si Twilio no está configurado
     public boolean sendWhatsAppMessage(String toNumber, String messageBody) {
-        try {
-            // Validar configuración
-            if (accountSid == null || accountSid.startsWith("YOUR_")) {
-                System.out.println("⚠️ Twilio no configurado. Configure las credenciales en application.properties");
-                return false;
-            }
-            
-            initialize();
-            
-            // Formatear número (debe tener formato internacional)
-            String formattedNumber = formatPhoneNumber(toNumber);
-            
-            System.out.println("📱 Enviando WhatsApp a: " + formattedNumber);
-            System.out.println("📝 Mensaje: " + messageBody);
-            
-            Message message = Message.creator(
-                new PhoneNumber("whatsapp:" + formattedNumber),
-                new PhoneNumber(fromNumber),
-                messageBody
-            ).create();
-            
-            System.out.println("✅ WhatsApp enviado. SID: " + message.getSid());
-            return true;
-            
-        } catch (Exception e) {
-            System.err.println("❌ Error enviando WhatsApp: " + e.getMessage());
-            e.printStackTrace();
+        return sendWhatsAppMessage(toNumber, messageBody, null);
+    }
+    
+    public boolean sendWhatsAppMessage(String toNumber, String messageBody, Long notificationId) {
+        // Validar configuración
+        if (!isConfigured()) {
+            System.out.println("⚠️ Twilio no configurado. Configure las credenciales en application.properties");
             return false;
         }
+        
+        // Formatear número (debe tener formato internacional)
+        outbox.enqueue(OutboxChannel.WHATSAPP, "whatsapp", formatPhoneNumber(toNumber),
+                Map.of("body", messageBody), notificationId);
+        return true;
+    }
+    
+    /**
+     * Envío real por Twilio, llamado desde OutboxDispatcher. Bloquea hasta la
+     * respuesta de la API y lanza la excepción para que se reintente.
+     */
+    public void deliver(String formattedNumber, String messageBody) {
+        if (!isConfigured()) {
+            throw new IllegalStateException("Twilio no configurado");
+        }
+        initialize();
+        
+        System.out.println("📱 Enviando WhatsApp a: " + formattedNumber);
+        
+        Message message = Message.creator(
+            new PhoneNumber("whatsapp:" + formattedNumber),
+            new PhoneNumber(fromNumber),
+            messageBody
+        ).create();
+        
+        System.out.println("✅ WhatsApp enviado. SID: " + message.getSid());
+    }
+    
+    private boolean isConfigured() {
+        return accountSid != null && !accountSid.isBlank() && !accountSid.startsWith("YOUR_");
     }
     
     private String formatPhoneNumber(String phoneNumber) {
@@ -0,0 +1,89 @@
+package com.aetos.backend.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Almacenamiento de archivos subidos (recursos, portadas y fotos de perfil).
+ *
+ * Las claves se agrupan por espacio de nombres; la implementación local los
+ * mapea a directorios y la de S3 a prefijos del bucket. Los controladores y
+ * servicios nunca arman rutas de disco: todo acceso a archivos pasa por aquí,
+ * lo que permite correr varias instancias contra el mismo almacenamiento.
+ */
+public interface BlobStore {
+
+    String RESOURCES = "resources";
+    String THUMBNAILS = "thumbnails";
+    String PROFILES = "profiles";
+    // Versiones reducidas de portadas y fotos, regenerables en cualquier momento
+    String DERIVATIVES = "derivatives";
+
+    record BlobInfo(long size, long lastModified, String etag) {}
+
+    // Archivo local con el contenido de un blob; si es una copia temporal se borra al cerrar
+    record LocalCopy(Path path, boolean temporary) implements AutoCloseable {
+        @Override
+        public void close() throws IOException {
+            if (temporary) Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Publica el archivo local {@code source} bajo la clave indicada. El
+     * origen se consume: la implementación lo mueve o lo elimina al terminar.
+     */
+    void putFile(String namespace, String key, Path source, String contentType) throws IOException;
+
+    // Publica un stream de longitud conocida sin pasarlo por disco local
+    void put(String namespace, String key, InputStream content, long length, String contentType) throws IOException;
+
+    Optional<BlobInfo> stat(String namespace, String key) throws IOException;
+
+    default boolean exists(String namespace, String key) throws IOException {
+        return stat(namespace, key).isPresent();
+    }
+
+    InputStream get(String namespace, String key) throws IOException;
+
+    // Lee {@code length} bytes desde {@code offset}
+    InputStream get(String namespace, String key, long offset, long length) throws IOException;
+
+    boolean delete(String namespace, String key) throws IOException;
+
+    /**
+     * URL firmada y temporal para que el cliente descargue directo del
+     * almacenamiento; vacío si la implementación sirve los archivos a través
+     * de la aplicación.
+     */
+    Optional<URI> presignedGet(String namespace, String key, Duration ttl, String contentType, String contentDisposition);
+
+    // Ruta en disco si el blob es local (permite sendfile y lecturas sin copia)
+    Optional<Path> localPath(String namespace, String key);
+
+    // Directorio local para archivos temporales de subidas y procesos
+    Path stagingDir() throws IOException;
+
+    /**
+     * Para librerías que leen de archivo (PDFBox, ImageIO): la ruta real si el
+     * blob es local o una copia temporal descargada en el staging.
+     */
+    default LocalCopy localCopy(String namespace, String key) throws IOException {
+        Optional<Path> local = localPath(namespace, key);
+        if (local.isPresent()) return new LocalCopy(local.get(), false);
+        Path tmp = stagingDir().resolve("copy-" + UUID.randomUUID() + ".tmp");
+        try (InputStream in = get(namespace, key)) {
+            Files.copy(in, tmp);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return new LocalCopy(tmp, true);
+    }
+}
@@ -0,0 +1,171 @@
+package com.aetos.backend.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * BlobStore sobre el sistema de archivos local, con los mismos directorios de
+ * siempre: recursos en RESOURCES_DIR, portadas en RESOURCES_DIR/thumbnails y
+ * fotos de perfil en UPLOADS_DIR/profiles. Las imágenes derivadas van a
+ * RESOURCES_DIR/derivatives.
+ */
+public class LocalFileSystemBlobStore implements BlobStore {
+
+    private static final Pattern SAFE_KEY = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+
+    private final Map<String, Path> directories;
+    private final Path uploadsBase;
+    private final Path staging;
+
+    public LocalFileSystemBlobStore(Path resourcesBase, Path uploadsBase) {
+        this.uploadsBase = uploadsBase;
+        this.directories = Map.of(
+                RESOURCES, resourcesBase,
+                THUMBNAILS, resourcesBase.resolve("thumbnails"),
+                PROFILES, uploadsBase.resolve("profiles"),
+                DERIVATIVES, resourcesBase.resolve("derivatives"));
+        // Dentro del mismo volumen que los recursos para publicar con un rename atómico
+        this.staging = resourcesBase.resolve(".staging");
+        try {
+            for (Path dir : directories.values()) Files.createDirectories(dir);
+            Files.createDirectories(staging);
+        } catch (IOException e) {
+            System.err.println("Error creando directorios: " + e.getMessage());
+        }
+    }
+
+    // Rutas por defecto a partir de las variables de entorno de siempre
+    public static LocalFileSystemBlobStore fromEnvironment() {
+        String resources = System.getenv("RESOURCES_DIR");
+        if (resources == null || resources.isBlank()) resources = System.getProperty("user.home") + "/aetos-resources";
+        String uploads = System.getenv("UPLOADS_DIR");
+        if (uploads == null || uploads.isBlank()) uploads = System.getenv("RESOURCES_DIR");
+        if (uploads == null || uploads.isBlank()) uploads = Paths.get(System.getProperty("user.home"), "aetos-uploads").toString();
+        return new LocalFileSystemBlobStore(Paths.get(resources).toAbsolutePath(), Paths.get(uploads).toAbsolutePath());
+    }
+
+    // Base servida como estático en /uploads/** y /api/uploads/**
+    public Path uploadsBase() {
+        return uploadsBase;
+    }
+
+    @Override
+    public void putFile(String namespace, String key, Path source, String contentType) throws IOException {
+        Path target = resolve(namespace, key);
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Otro volumen: se copia junto al destino y luego se renombra
+            Path tmp = target.resolveSibling("." + UUID.randomUUID() + ".tmp");
+            try {
+                Files.copy(source, tmp);
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+                Files.deleteIfExists(source);
+            }
+        }
+    }
+
+    @Override
+    public void put(String namespace, String key, InputStream content, long length, String contentType) throws IOException {
+        Path target = resolve(namespace, key);
+        Path tmp = target.resolveSibling("." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(content, tmp);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String namespace, String key) throws IOException {
+        Path path = resolve(namespace, key);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attrs.size();
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            return Optional.of(new BlobInfo(size, lastModified,
+                    "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\""));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public InputStream get(String namespace, String key) throws IOException {
+        return Files.newInputStream(resolve(namespace, key));
+    }
+
+    @Override
+    public InputStream get(String namespace, String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(namespace, key), StandardOpenOption.READ);
+        channel.position(offset);
+        InputStream in = Channels.newInputStream(channel);
+        return new java.io.FilterInputStream(in) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) return -1;
+                int b = super.read();
+                if (b >= 0) remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                if (remaining <= 0) return -1;
+                int n = super.read(buf, off, (int) Math.min(len, remaining));
+                if (n > 0) remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    @Override
+    public boolean delete(String namespace, String key) throws IOException {
+        return Files.deleteIfExists(resolve(namespace, key));
+    }
+
+    @Override
+    public Optional<URI> presignedGet(String namespace, String key, Duration ttl, String contentType, String contentDisposition) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Path> localPath(String namespace, String key) {
+        return Optional.of(resolve(namespace, key));
+    }
+
+    @Override
+    public Path stagingDir() throws IOException {
+        return Files.createDirectories(staging);
+    }
+
+    private Path resolve(String namespace, String key) {
+        Path dir = directories.get(namespace);
+        if (dir == null) throw new IllegalArgumentException("Espacio de nombres desconocido: " + namespace);
+        if (key == null || !SAFE_KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Clave de archivo inválida: " + key);
+        }
+        return dir.resolve(key);
+    }
+}
@@ -0,0 +1,275 @@
+package com.aetos.backend.storage;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * BlobStore sobre un almacenamiento compatible con S3 (AWS S3, MinIO, R2...).
+ *
+ * Habla la API REST directamente con java.net.http y firma con AWS
+ * Signature V4, sin SDK. Los blobs se guardan como {@code <namespace>/<key>}
+ * en un único bucket. Las subidas envían el cuerpo en streaming
+ * (UNSIGNED-PAYLOAD) y las descargas se resuelven con URLs prefirmadas, de
+ * modo que los bytes no pasan por los hilos de la aplicación.
+ */
+public class S3BlobStore implements BlobStore {
+
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final String SIGNED_HEADERS = "host;x-amz-content-sha256;x-amz-date";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final DateTimeFormatter AMZ_DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+    private final Path staging;
+    private final HttpClient http;
+
+    public S3BlobStore(URI endpoint, String region, String bucket, String accessKey, String secretKey,
+                       boolean pathStyle, Path staging) {
+        this.endpoint = endpoint;
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+        this.staging = staging;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    @Override
+    public void putFile(String namespace, String key, Path source, String contentType) throws IOException {
+        try {
+            HttpRequest.Builder request = signed("PUT", objectUri(namespace, key))
+                    .PUT(HttpRequest.BodyPublishers.ofFile(source));
+            if (contentType != null) request.header("Content-Type", contentType);
+            expect(send(request.build(), HttpResponse.BodyHandlers.ofString()), "PUT", key, 200);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public void put(String namespace, String key, InputStream content, long length, String contentType) throws IOException {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> content), length);
+        HttpRequest.Builder request = signed("PUT", objectUri(namespace, key)).PUT(body);
+        if (contentType != null) request.header("Content-Type", contentType);
+        expect(send(request.build(), HttpResponse.BodyHandlers.ofString()), "PUT", key, 200);
+    }
+
+    @Override
+    public Optional<BlobInfo> stat(String namespace, String key) throws IOException {
+        HttpRequest request = signed("HEAD", objectUri(namespace, key))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) return Optional.empty();
+        expect(response, "HEAD", key, 200);
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        long lastModified = response.headers().firstValue("Last-Modified")
+                .map(v -> ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                .orElse(0L);
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        return Optional.of(new BlobInfo(size, lastModified, etag));
+    }
+
+    @Override
+    public InputStream get(String namespace, String key) throws IOException {
+        return openStream(signed("GET", objectUri(namespace, key)).GET().build(), key, 200);
+    }
+
+    @Override
+    public InputStream get(String namespace, String key, long offset, long length) throws IOException {
+        HttpRequest request = signed("GET", objectUri(namespace, key))
+                .header("Range", "bytes=" + offset + "-" + (offset + length - 1))
+                .GET()
+                .build();
+        return openStream(request, key, 206);
+    }
+
+    @Override
+    public boolean delete(String namespace, String key) throws IOException {
+        HttpRequest request = signed("DELETE", objectUri(namespace, key)).DELETE().build();
+        HttpResponse<String> response = send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 404) return false;
+        expect(response, "DELETE", key, 204);
+        return true;
+    }
+
+    @Override
+    public Optional<URI> presignedGet(String namespace, String key, Duration ttl, String contentType, String contentDisposition) {
+        return Optional.of(presign(objectUri(namespace, key), ZonedDateTime.now(ZoneOffset.UTC), ttl,
+                contentType, contentDisposition));
+    }
+
+    // URL prefirmada para un instante dado (separado para comprobarlo con los ejemplos de AWS)
+    URI presign(URI uri, ZonedDateTime now, Duration ttl, String contentType, String contentDisposition) {
+        String amzDate = now.format(AMZ_DATE);
+        String scope = now.format(AMZ_DAY) + "/" + region + "/s3/aws4_request";
+
+        Map<String, String> query = new TreeMap<>();
+        query.put("X-Amz-Algorithm", "AWS4-HMAC-SHA256");
+        query.put("X-Amz-Credential", accessKey + "/" + scope);
+        query.put("X-Amz-Date", amzDate);
+        query.put("X-Amz-Expires", Long.toString(Math.min(ttl.toSeconds(), 604800)));
+        query.put("X-Amz-SignedHeaders", "host");
+        if (contentDisposition != null) query.put("response-content-disposition", contentDisposition);
+        if (contentType != null) query.put("response-content-type", contentType);
+        String canonicalQuery = canonicalQuery(query);
+
+        String canonicalRequest = "GET\n" + uri.getRawPath() + "\n" + canonicalQuery + "\n"
+                + "host:" + hostHeader(uri) + "\n\nhost\n" + UNSIGNED_PAYLOAD;
+        String signature = sign(now, scope, amzDate, canonicalRequest);
+        return URI.create(uri + "?" + canonicalQuery + "&X-Amz-Signature=" + signature);
+    }
+
+    @Override
+    public Optional<Path> localPath(String namespace, String key) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Path stagingDir() throws IOException {
+        return Files.createDirectories(staging);
+    }
+
+    private InputStream openStream(HttpRequest request, String key, int expectedStatus) throws IOException {
+        HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == expectedStatus || response.statusCode() == 200) {
+            return response.body();
+        }
+        try (InputStream ignored = response.body()) {
+            if (response.statusCode() == 404) throw new NoSuchFileException(key);
+            throw new IOException("S3 GET " + key + " respondió " + response.statusCode());
+        }
+    }
+
+    // Construye la request con las cabeceras de firma V4 (payload sin firmar)
+    private HttpRequest.Builder signed(String method, URI uri) {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        String amzDate = now.format(AMZ_DATE);
+        String scope = now.format(AMZ_DAY) + "/" + region + "/s3/aws4_request";
+        String signature = sign(now, scope, amzDate, canonicalRequest(method, uri, amzDate));
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(5))
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + SIGNED_HEADERS + ", Signature=" + signature);
+    }
+
+    // Request canónica de las llamadas firmadas por cabecera (payload sin firmar)
+    static String canonicalRequest(String method, URI uri, String amzDate) {
+        return method + "\n" + uri.getRawPath() + "\n\n"
+                + "host:" + hostHeader(uri) + "\n"
+                + "x-amz-content-sha256:" + UNSIGNED_PAYLOAD + "\n"
+                + "x-amz-date:" + amzDate + "\n\n"
+                + SIGNED_HEADERS + "\n" + UNSIGNED_PAYLOAD;
+    }
+
+    String sign(ZonedDateTime now, String scope, String amzDate, String canonicalRequest) {
+        try {
+            String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                    + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                            .digest(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+            byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), now.format(AMZ_DAY));
+            key = hmac(key, region);
+            key = hmac(key, "s3");
+            key = hmac(key, "aws4_request");
+            return HexFormat.of().formatHex(hmac(key, stringToSign));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo firmar la request S3", e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private URI objectUri(String namespace, String key) {
+        String path = "/" + encode(namespace) + "/" + encode(key);
+        String port = endpoint.getPort() != -1 ? ":" + endpoint.getPort() : "";
+        if (pathStyle) {
+            return URI.create(endpoint.getScheme() + "://" + endpoint.getHost() + port + "/" + encode(bucket) + path);
+        }
+        return URI.create(endpoint.getScheme() + "://" + bucket + "." + endpoint.getHost() + port + path);
+    }
+
+    // Igual que la cabecera Host que envía HttpClient: sin puerto si es el por defecto
+    private static String hostHeader(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort = port == -1
+                || ("https".equals(uri.getScheme()) && port == 443)
+                || ("http".equals(uri.getScheme()) && port == 80);
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    private static String canonicalQuery(Map<String, String> sortedParams) {
+        StringJoiner joiner = new StringJoiner("&");
+        sortedParams.forEach((k, v) -> joiner.add(encode(k) + "=" + encode(v)));
+        return joiner.toString();
+    }
+
+    // Codificación URI de AWS: solo se conservan los caracteres no reservados
+    private static String encode(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        return sb.toString();
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return http.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request S3 interrumpida");
+        }
+    }
+
+    private static void expect(HttpResponse<?> response, String method, String key, int expected) throws IOException {
+        int status = response.statusCode();
+        if (status == expected || status == 200 || status == 204) return;
+        Object body = response.body();
+        throw new IOException("S3 " + method + " " + key + " respondió " + status
+                + (body instanceof String s && !s.isBlank() ? ": " + s : ""));
+    }
+}
@@ -0,0 +1,42 @@
+package com.aetos.backend.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.nio.file.Paths;
+
+/**
+ * Selecciona la implementación de BlobStore con storage.type: "local"
+ * (por defecto, directorios RESOURCES_DIR / UPLOADS_DIR) o "s3" (cualquier
+ * almacenamiento compatible; con MinIO usar storage.s3.path-style=true).
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    public BlobStore blobStore(
+            @Value("${storage.type:local}") String type,
+            @Value("${storage.s3.endpoint:}") String endpoint,
+            @Value("${storage.s3.region:us-east-1}") String region,
+            @Value("${storage.s3.bucket:}") String bucket,
+            @Value("${storage.s3.access-key:}") String accessKey,
+            @Value("${storage.s3.secret-key:}") String secretKey,
+            @Value("${storage.s3.path-style:true}") boolean pathStyle,
+            @Value("${storage.staging-dir:}") String stagingDir) {
+        if ("s3".equalsIgnoreCase(type)) {
+            if (endpoint.isBlank() || bucket.isBlank()) {
+                throw new IllegalStateException("storage.type=s3 requiere storage.s3.endpoint y storage.s3.bucket");
+            }
+            String staging = stagingDir.isBlank()
+                    ? Paths.get(System.getProperty("java.io.tmpdir"), "aetos-staging").toString()
+                    : stagingDir;
+            System.out.println("✅ Almacenamiento S3: " + endpoint + " bucket " + bucket);
+            return new S3BlobStore(URI.create(endpoint), region, bucket, accessKey, secretKey, pathStyle, Paths.get(staging));
+        }
+        LocalFileSystemBlobStore local = LocalFileSystemBlobStore.fromEnvironment();
+        System.out.println("✅ Almacenamiento local: uploads en " + local.uploadsBase());
+        return local;
+    }
+}
@@ -0,0 +1,81 @@
+package com.aetos.backend.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Lectura y escalado de imágenes con memoria acotada.
+ *
+ * {@link #readForWidth} decodifica con submuestreo (ImageReadParam), de modo
+ * que una foto de 40 megapíxeles nunca se expande completa en el heap: solo se
+ * leen las filas y columnas necesarias para el ancho pedido. Las dimensiones
+ * declaradas se validan antes de decodificar: una imagen por encima del tope
+ * (típicamente una "bomba" de descompresión) se rechaza con IOException.
+ */
+public final class Images {
+
+    // Tope de píxeles decodificados (~64 MB en ARGB), sin importar la proporción
+    private static final long MAX_DECODE_PIXELS = 16_000_000L;
+    // Tope de la imagen original; por encima no se decodifica ni submuestreada
+    private static final long MAX_SOURCE_PIXELS = 250_000_000L;
+    private static final int MAX_SOURCE_SIDE = 50_000;
+
+    private Images() {}
+
+    /**
+     * Decodifica la primera imagen del archivo a un tamaño de al menos el doble
+     * de {@code targetWidth} (para reducir luego con buena calidad).
+     */
+    public static BufferedImage readForWidth(File file, int targetWidth) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) throw new IOException("No se pudo abrir la imagen");
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) throw new IOException("Formato de imagen no soportado");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width <= 0 || height <= 0 || width > MAX_SOURCE_SIDE || height > MAX_SOURCE_SIDE
+                        || (long) width * height > MAX_SOURCE_PIXELS) {
+                    throw new IOException("Imagen demasiado grande: " + width + "x" + height);
+                }
+                int factor = Math.max(1, width / (Math.max(1, targetWidth) * 2));
+                while ((long) width * height / ((long) factor * factor) > MAX_DECODE_PIXELS) factor++;
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Reduce al ancho indicado conservando la proporción; nunca amplía
+    public static BufferedImage scaleToWidth(BufferedImage img, int tw, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        if (img.getWidth() <= tw && img.getType() == type) return img;
+        int width = Math.min(tw, img.getWidth());
+        int th = Math.max(1, (int) ((double) img.getHeight() / img.getWidth() * width));
+        BufferedImage out = new BufferedImage(width, th, type);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        if (!alpha) {
+            // JPEG no tiene transparencia: fondo blanco en lugar de negro
+            g.setColor(java.awt.Color.WHITE);
+            g.fillRect(0, 0, width, th);
+        }
+        g.drawImage(img, 0, 0, width, th, null);
+        g.dispose();
+        return out;
+    }
+}
@@ -0,0 +1,112 @@
+package com.aetos.backend.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plantilla de texto compilada una sola vez.
+ *
+ * Sintaxis mínima: {@code {{nombre}}} inserta un valor (escapado como HTML si
+ * la plantilla es HTML) y {@code {{#nombre}}...{{/nombre}}} solo se incluye si
+ * el valor existe y no está vacío. El texto se parte en segmentos al compilar,
+ * así renderizar es recorrer una lista y copiar a un StringBuilder.
+ */
+public final class Template {
+
+    private sealed interface Node permits Text, Value, Section {}
+    private record Text(String text) implements Node {}
+    private record Value(String name) implements Node {}
+    private record Section(String name, List<Node> body) implements Node {}
+
+    private final String name;
+    private final boolean html;
+    private final List<Node> nodes;
+    private final int sizeHint;
+
+    private Template(String name, boolean html, List<Node> nodes, int sizeHint) {
+        this.name = name;
+        this.html = html;
+        this.nodes = nodes;
+        this.sizeHint = sizeHint;
+    }
+
+    public static Template compile(String name, String source, boolean html) {
+        List<List<Node>> stack = new ArrayList<>();
+        List<String> open = new ArrayList<>();
+        List<Node> current = new ArrayList<>();
+        int pos = 0;
+        while (pos < source.length()) {
+            int start = source.indexOf("{{", pos);
+            if (start < 0) {
+                current.add(new Text(source.substring(pos)));
+                break;
+            }
+            if (start > pos) current.add(new Text(source.substring(pos, start)));
+            int end = source.indexOf("}}", start);
+            if (end < 0) throw new IllegalArgumentException(name + ": '{{' sin cerrar en la posición " + start);
+            String tag = source.substring(start + 2, end).trim();
+            if (tag.startsWith("#")) {
+                stack.add(current);
+                open.add(tag.substring(1).trim());
+                current = new ArrayList<>();
+            } else if (tag.startsWith("/")) {
+                String closing = tag.substring(1).trim();
+                if (open.isEmpty() || !open.get(open.size() - 1).equals(closing)) {
+                    throw new IllegalArgumentException(name + ": cierre inesperado {{/" + closing + "}}");
+                }
+                Section section = new Section(open.remove(open.size() - 1), List.copyOf(current));
+                current = stack.remove(stack.size() - 1);
+                current.add(section);
+            } else {
+                current.add(new Value(tag));
+            }
+            pos = end + 2;
+        }
+        if (!open.isEmpty()) throw new IllegalArgumentException(name + ": falta {{/" + open.get(open.size() - 1) + "}}");
+        return new Template(name, html, List.copyOf(current), source.length());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    // Tamaño aproximado del resultado, para dimensionar el buffer
+    public int sizeHint() {
+        return sizeHint;
+    }
+
+    public void render(Map<String, String> values, StringBuilder out) {
+        render(nodes, values, out);
+    }
+
+    private void render(List<Node> nodes, Map<String, String> values, StringBuilder out) {
+        for (Node node : nodes) {
+            if (node instanceof Text t) {
+                out.append(t.text());
+            } else if (node instanceof Value v) {
+                String value = values.get(v.name());
+                if (value == null) continue;
+                if (html) escapeHtml(value, out);
+                else out.append(value);
+            } else if (node instanceof Section s) {
+                String value = values.get(s.name());
+                if (value != null && !value.isEmpty()) render(s.body(), values, out);
+            }
+        }
+    }
+
+    private static void escapeHtml(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
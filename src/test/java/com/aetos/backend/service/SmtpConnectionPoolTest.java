@@ -0,0 +1,254 @@
+package com.aetos.backend.service;
+
+import com.aetos.backend.model.OutboxChannel;
+import com.aetos.backend.model.OutboxMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pool SMTP y envío por lotes (EmailService.deliverBatch) contra un servidor
+ * SMTP mínimo en proceso, que cuenta conexiones, mensajes y NOOP y puede
+ * cortar las conexiones como hacen los servidores reales.
+ */
+class SmtpConnectionPoolTest {
+
+    private FakeSmtpServer server;
+    private JavaMailSenderImpl mailSender;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new FakeSmtpServer();
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(server.port());
+        mailSender.getJavaMailProperties().put("mail.smtp.connectiontimeout", "5000");
+        mailSender.getJavaMailProperties().put("mail.smtp.timeout", "5000");
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void batchesShareOneConnection() {
+        SmtpConnectionPool pool = pool(100);
+        EmailService emailService = emailService(pool);
+
+        assertEquals(Collections.nCopies(5, null), deliver(emailService, verifications(5)));
+        assertEquals(Collections.nCopies(3, null), deliver(emailService, verifications(3)));
+
+        assertEquals(1, server.connections.get(), "el segundo lote reutiliza la conexión libre");
+        assertEquals(8, server.messages.get());
+        Map<String, Object> stats = pool.stats();
+        assertEquals(1L, stats.get("opened"));
+        assertEquals(8L, stats.get("sent"));
+        assertEquals(1, stats.get("idle"));
+        assertEquals(2, stats.get("available"));
+    }
+
+    @Test
+    void recyclesConnectionAfterMaxMessages() {
+        SmtpConnectionPool pool = pool(2);
+
+        assertEquals(Collections.nCopies(5, null), deliver(emailService(pool), verifications(5)));
+
+        // 2 + 2 + 1: el lote pide otra conexión al llegar al tope, sin esperar a devolverla
+        assertEquals(3, server.connections.get());
+        assertEquals(5, server.messages.get());
+        assertEquals(3L, pool.stats().get("opened"));
+        assertEquals(2L, pool.stats().get("recycled"));
+    }
+
+    @Test
+    void recoversWhenServerDropsConnectionMidBatch() {
+        server.dropAfterMessages = 2;
+        SmtpConnectionPool pool = pool(100);
+
+        List<Exception> results = deliver(emailService(pool), verifications(4));
+
+        assertNull(results.get(0));
+        assertNull(results.get(1));
+        assertNotNull(results.get(2), "el mensaje enviado por la conexión cortada se informa como fallido");
+        assertNull(results.get(3), "el resto del lote sale por una conexión nueva");
+        assertEquals(2, server.connections.get());
+        assertEquals(3, server.messages.get());
+        assertEquals(2L, pool.stats().get("opened"));
+    }
+
+    @Test
+    void validatesIdleConnectionWithNoop() throws Exception {
+        SmtpConnectionPool pool = pool(100);
+        EmailService emailService = emailService(pool);
+
+        // Conexión sana que estuvo parada: se valida con NOOP y se reutiliza
+        deliver(emailService, verifications(1));
+        Thread.sleep(5200);
+        assertEquals(Collections.nCopies(1, null), deliver(emailService, verifications(1)));
+        assertTrue(server.noops.get() >= 1);
+        assertEquals(1, server.connections.get());
+
+        // Conexión que el servidor cerró mientras estaba libre: el NOOP falla y se abre otra
+        server.dropAll();
+        Thread.sleep(5200);
+        assertEquals(Collections.nCopies(1, null), deliver(emailService, verifications(1)));
+        assertEquals(2, server.connections.get());
+        assertEquals(3, server.messages.get());
+        assertEquals(1L, pool.stats().get("recycled"));
+    }
+
+    private SmtpConnectionPool pool(int maxMessagesPerConnection) {
+        return new SmtpConnectionPool(mailSender, 2, maxMessagesPerConnection,
+                Duration.ofMinutes(1), Duration.ofSeconds(5));
+    }
+
+    private EmailService emailService(SmtpConnectionPool pool) {
+        EmailService emailService = new EmailService(mailSender, null, pool, new EmailTemplates());
+        ReflectionTestUtils.setField(emailService, "fromEmail", "aetos@example.com");
+        ReflectionTestUtils.setField(emailService, "appUrl", "https://aetos.example.com");
+        return emailService;
+    }
+
+    private static List<OutboxMessage> verifications(int count) {
+        List<OutboxMessage> batch = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            batch.add(OutboxMessage.builder()
+                    .id((long) i)
+                    .channel(OutboxChannel.EMAIL)
+                    .kind("verification")
+                    .recipient("usuario" + i + "@example.com")
+                    .build());
+        }
+        return batch;
+    }
+
+    // Entrega el lote y devuelve el error de cada mensaje en orden (null si salió)
+    private static List<Exception> deliver(EmailService emailService, List<OutboxMessage> batch) {
+        List<Exception> results = new ArrayList<>();
+        emailService.deliverBatch(batch, m -> true, m -> Map.of("token", "token-" + m.getId()),
+                (m, error) -> results.add(error));
+        return results;
+    }
+
+    /** Servidor SMTP mínimo: acepta todo, sin TLS ni autenticación. */
+    private static final class FakeSmtpServer implements AutoCloseable {
+
+        private final ServerSocket serverSocket;
+        private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger messages = new AtomicInteger();
+        final AtomicInteger noops = new AtomicInteger();
+        // Cierra la conexión tras aceptar tantos mensajes por ella (0 = nunca)
+        volatile int dropAfterMessages;
+
+        FakeSmtpServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::acceptLoop, "fake-smtp");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        // Corta todas las conexiones abiertas, como un servidor que cierra las inactivas
+        void dropAll() throws IOException {
+            for (Socket socket : open) {
+                socket.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            dropAll();
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    open.add(socket);
+                    Thread session = new Thread(() -> serve(socket), "fake-smtp-session");
+                    session.setDaemon(true);
+                    session.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (socket) {
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1);
+                reply(out, "220 localhost ESMTP");
+                int received = 0;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.length() > 4 ? line.substring(0, 4) : line;
+                    switch (command.toUpperCase()) {
+                        case "EHLO", "HELO", "MAIL", "RCPT", "RSET" -> reply(out, "250 OK");
+                        case "NOOP" -> {
+                            noops.incrementAndGet();
+                            reply(out, "250 OK");
+                        }
+                        case "DATA" -> {
+                            reply(out, "354 Fin con <CRLF>.<CRLF>");
+                            String data;
+                            do {
+                                data = in.readLine();
+                            } while (data != null && !".".equals(data));
+                            messages.incrementAndGet();
+                            reply(out, "250 OK");
+                            if (dropAfterMessages > 0 && ++received >= dropAfterMessages) return;
+                        }
+                        case "QUIT" -> {
+                            reply(out, "221 Bye");
+                            return;
+                        }
+                        default -> reply(out, "502 No implementado");
+                    }
+                }
+            } catch (IOException e) {
+                // El cliente o dropAll() cerraron la conexión
+            } finally {
+                open.remove(socket);
+            }
+        }
+
+        private static void reply(Writer out, String line) throws IOException {
+            out.write(line + "\r\n");
+            out.flush();
+        }
+    }
+}
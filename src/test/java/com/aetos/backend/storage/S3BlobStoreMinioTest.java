@@ -0,0 +1,105 @@
+package com.aetos.backend.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ida y vuelta contra un MinIO real. Solo corre si se define MINIO_ENDPOINT, p. ej.:
+ *
+ *   docker run -p 9000:9000 minio/minio server /data
+ *   (crear el bucket MINIO_BUCKET, por defecto "aetos-test")
+ *   MINIO_ENDPOINT=http://localhost:9000 mvn test -Dtest=S3BlobStoreMinioTest
+ *
+ * Credenciales en MINIO_ACCESS_KEY / MINIO_SECRET_KEY (por defecto minioadmin).
+ */
+@EnabledIfEnvironmentVariable(named = "MINIO_ENDPOINT", matches = ".+")
+class S3BlobStoreMinioTest {
+
+    @TempDir
+    Path staging;
+
+    private S3BlobStore store() {
+        return new S3BlobStore(URI.create(System.getenv("MINIO_ENDPOINT")), "us-east-1",
+                env("MINIO_BUCKET", "aetos-test"),
+                env("MINIO_ACCESS_KEY", "minioadmin"),
+                env("MINIO_SECRET_KEY", "minioadmin"),
+                true, staging);
+    }
+
+    @Test
+    void putGetStatPresignDelete() throws Exception {
+        S3BlobStore store = store();
+        String key = "test-" + UUID.randomUUID() + ".txt";
+        byte[] content = "contenido de prueba á é ñ".getBytes(StandardCharsets.UTF_8);
+
+        Path source = Files.write(store.stagingDir().resolve("upload.tmp"), content);
+        store.putFile(BlobStore.RESOURCES, key, source, "text/plain");
+        assertFalse(Files.exists(source), "putFile consume el archivo de origen");
+        try {
+            Optional<BlobStore.BlobInfo> info = store.stat(BlobStore.RESOURCES, key);
+            assertTrue(info.isPresent());
+            assertEquals(content.length, info.get().size());
+
+            try (InputStream in = store.get(BlobStore.RESOURCES, key)) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+            try (InputStream in = store.get(BlobStore.RESOURCES, key, 0, 9)) {
+                assertEquals("contenido", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            URI presigned = store.presignedGet(BlobStore.RESOURCES, key, Duration.ofMinutes(5), "text/plain", null)
+                    .orElseThrow();
+            HttpResponse<byte[]> response = HttpClient.newHttpClient()
+                    .send(HttpRequest.newBuilder(presigned).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+            assertEquals(200, response.statusCode());
+            assertArrayEquals(content, response.body());
+            assertEquals("text/plain", response.headers().firstValue("Content-Type").orElse(null));
+        } finally {
+            assertTrue(store.delete(BlobStore.RESOURCES, key));
+        }
+        assertTrue(store.stat(BlobStore.RESOURCES, key).isEmpty());
+        assertFalse(store.exists(BlobStore.RESOURCES, key));
+    }
+
+    @Test
+    void putStreamWithKeyNeedingEncoding() throws Exception {
+        S3BlobStore store = store();
+        String key = "con espacio " + UUID.randomUUID() + "+(1).png";
+        byte[] content = new byte[256 * 1024];
+        new Random(42).nextBytes(content);
+
+        store.put(BlobStore.THUMBNAILS, key, new ByteArrayInputStream(content), content.length, "image/png");
+        try {
+            try (InputStream in = store.get(BlobStore.THUMBNAILS, key)) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+        } finally {
+            store.delete(BlobStore.THUMBNAILS, key);
+        }
+    }
+
+    private static String env(String name, String fallback) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? fallback : value;
+    }
+}
@@ -0,0 +1,89 @@
+package com.aetos.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sintaxis de Template: valores (escapados solo en HTML), secciones
+ * condicionales y errores de compilación por etiquetas mal cerradas.
+ */
+class TemplateTest {
+
+    @Test
+    void escapesValuesInHtmlTemplates() {
+        Template template = Template.compile("t.html", "<p>{{nombre}}</p>", true);
+
+        assertEquals("<p>&lt;b&gt;Tom &amp; &quot;Jerry&quot; &#39;x&#39;&lt;/b&gt;</p>",
+                render(template, Map.of("nombre", "<b>Tom & \"Jerry\" 'x'</b>")));
+    }
+
+    @Test
+    void leavesValuesAsIsInTextTemplates() {
+        Template template = Template.compile("t.txt", "Hola {{nombre}}", false);
+
+        assertEquals("Hola <b>Tom & 'Jerry'</b>", render(template, Map.of("nombre", "<b>Tom & 'Jerry'</b>")));
+    }
+
+    @Test
+    void missingValueRendersNothing() {
+        Template template = Template.compile("t.txt", "[{{nombre}}]", false);
+
+        assertEquals("[]", render(template, Map.of()));
+    }
+
+    @Test
+    void sectionRendersOnlyWhenValueIsPresentAndNotEmpty() {
+        Template template = Template.compile("t.html", "a{{#lugar}} en {{lugar}}{{/lugar}}.", true);
+
+        assertEquals("a en Sala &amp; Patio.", render(template, Map.of("lugar", "Sala & Patio")));
+        assertEquals("a.", render(template, Map.of("lugar", "")));
+        assertEquals("a.", render(template, Map.of()));
+    }
+
+    @Test
+    void nestedSections() {
+        Template template = Template.compile("t.txt", "{{#a}}A{{#b}}B{{/b}}{{/a}}", false);
+
+        assertEquals("AB", render(template, Map.of("a", "1", "b", "1")));
+        assertEquals("A", render(template, Map.of("a", "1")));
+        assertEquals("", render(template, Map.of("b", "1")));
+    }
+
+    @Test
+    void rejectsUnclosedTag() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Template.compile("t.txt", "Hola {{nombre", false));
+
+        assertEquals("t.txt: '{{' sin cerrar en la posición 5", e.getMessage());
+    }
+
+    @Test
+    void rejectsMissingSectionClose() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Template.compile("t.txt", "{{#a}}{{#b}}x{{/b}}", false));
+
+        assertEquals("t.txt: falta {{/a}}", e.getMessage());
+    }
+
+    @Test
+    void rejectsMismatchedOrStrayClose() {
+        IllegalArgumentException mismatched = assertThrows(IllegalArgumentException.class,
+                () -> Template.compile("t.txt", "{{#a}}{{#b}}x{{/a}}{{/b}}", false));
+        assertEquals("t.txt: cierre inesperado {{/a}}", mismatched.getMessage());
+
+        IllegalArgumentException stray = assertThrows(IllegalArgumentException.class,
+                () -> Template.compile("t.txt", "x{{/a}}", false));
+        assertTrue(stray.getMessage().contains("cierre inesperado {{/a}}"));
+    }
+
+    private static String render(Template template, Map<String, String> values) {
+        StringBuilder out = new StringBuilder();
+        template.render(values, out);
+        return out.toString();
+    }
+}